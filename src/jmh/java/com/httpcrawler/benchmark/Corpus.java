@@ -0,0 +1,59 @@
+package com.httpcrawler.benchmark;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HTML pages the benchmarks run on: {@code small} and {@code cyrillic} articles, a link-heavy {@code links}
+ * site map and a {@code huge} page built by repeating the article bodies to about 8 MiB.
+ */
+@ParametersAreNonnullByDefault
+public final class Corpus {
+
+    public static final String BASE_URL = "https://www.example.com";
+    public static final String[] PAGES = {"small", "huge", "links", "cyrillic"};
+
+    private static final int HUGE_PAGE_BYTES = 8 * 1024 * 1024;
+
+    private Corpus() {
+    }
+
+    public static byte[] bytes(String page) {
+        return page.equals("huge") ? hugePage() : resource(page + ".html");
+    }
+
+    public static char[] chars(String page) {
+        return new String(bytes(page), StandardCharsets.UTF_8).toCharArray();
+    }
+
+    private static byte[] hugePage() {
+        String small = new String(resource("small.html"), StandardCharsets.UTF_8);
+        String cyrillic = new String(resource("cyrillic.html"), StandardCharsets.UTF_8);
+        String bodies = body(small) + body(cyrillic);
+        StringBuilder page = new StringBuilder(HUGE_PAGE_BYTES + bodies.length() * 2);
+        page.append(small, 0, small.indexOf("<body>") + "<body>".length());
+        while (page.length() < HUGE_PAGE_BYTES) {
+            page.append(bodies);
+        }
+        page.append("</body>\n</html>\n");
+        return page.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String body(String page) {
+        return page.substring(page.indexOf("<body>") + "<body>".length(), page.indexOf("</body>"));
+    }
+
+    private static byte[] resource(String name) {
+        try (InputStream in = Corpus.class.getResourceAsStream("/corpus/" + name)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Unknown corpus page: " + name);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.httpcrawler.benchmark;
+
+import com.httpcrawler.data.WordCountTable;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic vocabulary of distinct lowercase words whose frequencies follow Zipf's law, as word counts of
+ * natural text do: the word of rank {@code r} is seen about {@code 1 / r} times as often as the first one.
+ */
+@ParametersAreNonnullByDefault
+public final class Vocabulary {
+
+    private static final long TOP_WORD_COUNT = 10_000_000L;
+
+    private Vocabulary() {
+    }
+
+    public static String word(int rank) {
+        char[] chars = new char[8];
+        int length = 0;
+        int value = rank;
+        do {
+            chars[length++] = (char) ('a' + value % 26);
+            value = value / 26 - 1;
+        } while (value >= 0);
+        return new String(chars, 0, length);
+    }
+
+    public static long count(int rank) {
+        return Math.max(1, TOP_WORD_COUNT / (rank + 1));
+    }
+
+    /**
+     * @return a page of {@code length} words drawn from the {@code size} most frequent words.
+     */
+    public static WordCountTable page(int size, int length, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        double harmonic = Math.log(size) + 0.5772;
+        WordCountTable page = new WordCountTable();
+        for (int i = 0; i < length; i++) {
+            int rank = (int) Math.min(size - 1, Math.exp(random.nextDouble() * harmonic) - 1);
+            page.add(word(rank), 1);
+        }
+        return page;
+    }
+}
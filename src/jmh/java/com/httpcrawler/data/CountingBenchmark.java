@@ -0,0 +1,128 @@
+package com.httpcrawler.data;
+
+import com.httpcrawler.benchmark.Corpus;
+import com.httpcrawler.benchmark.Vocabulary;
+import com.httpcrawler.parser.HtmlHandler;
+import com.httpcrawler.parser.HtmlTokenizer;
+import com.httpcrawler.parser.WordTokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pages per second merged into one shared {@link WordCounter} by 1, 2, 4 and all available threads. Each
+ * thread merges corpus pages and synthetic pages from a 100k word vocabulary, the way parser threads of a
+ * single crawl do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CountingBenchmark {
+
+    private static final int SYNTHETIC_PAGES = 32;
+    private static final int SYNTHETIC_VOCABULARY = 100_000;
+    private static final int SYNTHETIC_PAGE_WORDS = 2_000;
+
+    @Param({"EXACT", "APPROXIMATE"})
+    public CountingMode mode;
+
+    @Param({"16"})
+    public int shardCount;
+
+    private WordCounter wordCounter;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        wordCounter = mode == CountingMode.APPROXIMATE
+                ? new ApproximateWordFrequencies(CountingOptions.DEFAULT_EPSILON, CountingOptions.DEFAULT_DELTA, 100)
+                : new WordFrequencies(shardCount);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void oneThread(Pages pages) {
+        wordCounter.addAll(pages.next());
+    }
+
+    @Benchmark
+    @Threads(2)
+    public void twoThreads(Pages pages) {
+        wordCounter.addAll(pages.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void fourThreads(Pages pages) {
+        wordCounter.addAll(pages.next());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void allThreads(Pages pages) {
+        wordCounter.addAll(pages.next());
+    }
+
+    @State(Scope.Thread)
+    public static class Pages {
+        private WordCountTable[] tables;
+        private int next;
+
+        @Setup
+        public void setUp() {
+            List<WordCountTable> pages = new ArrayList<>();
+            for (String page : Corpus.PAGES) {
+                if (!page.equals("huge")) {
+                    pages.add(tokenize(Corpus.chars(page)));
+                }
+            }
+            long seed = ThreadLocalRandom.current().nextLong();
+            for (int i = 0; i < SYNTHETIC_PAGES; i++) {
+                pages.add(Vocabulary.page(SYNTHETIC_VOCABULARY, SYNTHETIC_PAGE_WORDS, seed + i));
+            }
+            tables = pages.toArray(new WordCountTable[0]);
+        }
+
+        WordCountTable next() {
+            WordCountTable table = tables[next];
+            next = next + 1 == tables.length ? 0 : next + 1;
+            return table;
+        }
+
+        private static WordCountTable tokenize(char[] chars) {
+            WordCountTable words = new WordCountTable();
+            WordTokenizer wordTokenizer = new WordTokenizer(words, false);
+            HtmlTokenizer tokenizer = new HtmlTokenizer(new HtmlHandler() {
+                @Override
+                public void onLink(String href) {
+                }
+
+                @Override
+                public void onText(char[] chars, int offset, int length) {
+                    wordTokenizer.append(chars, offset, length);
+                }
+            });
+            tokenizer.feed(chars, 0, chars.length);
+            tokenizer.finish();
+            wordTokenizer.finish();
+            return words;
+        }
+    }
+}
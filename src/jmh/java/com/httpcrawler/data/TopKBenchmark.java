@@ -0,0 +1,67 @@
+package com.httpcrawler.data;
+
+import com.httpcrawler.benchmark.Vocabulary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-K selection over a finished crawl result with a Zipf distributed vocabulary, sequential and split by
+ * shard over the common pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class TopKBenchmark {
+
+    private static final int BATCH_SIZE = 100_000;
+
+    @Param({"10000", "1000000", "10000000"})
+    public int vocabulary;
+
+    @Param({"100"})
+    public int topCount;
+
+    @Param({"16"})
+    public int shardCount;
+
+    private WordFrequencies wordFrequencies;
+
+    @Setup
+    public void setUp() {
+        wordFrequencies = new WordFrequencies(shardCount);
+        for (int start = 0; start < vocabulary; start += BATCH_SIZE) {
+            int end = Math.min(vocabulary, start + BATCH_SIZE);
+            WordCountTable batch = new WordCountTable(end - start);
+            for (int rank = start; rank < end; rank++) {
+                batch.add(Vocabulary.word(rank), (int) Vocabulary.count(rank));
+            }
+            wordFrequencies.addAll(batch);
+        }
+    }
+
+    @Benchmark
+    public Map<String, Long> sequential() {
+        return TopKSelector.select(wordFrequencies, topCount).toMap();
+    }
+
+    @Benchmark
+    public Map<String, Long> parallel() {
+        return TopKSelector.select(wordFrequencies, topCount, ForkJoinPool.commonPool()).toMap();
+    }
+}
@@ -0,0 +1,108 @@
+package com.httpcrawler.parser;
+
+import com.httpcrawler.benchmark.Corpus;
+import com.httpcrawler.data.WordCountTable;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single page throughput of the three tokenizing stages: words only, HTML plus words, and bytes through
+ * {@link PageDecoder}. The {@code bytes} counter reports input bytes per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+
+    @Param({"small", "huge", "links", "cyrillic"})
+    public String page;
+
+    @Param({"false", "true"})
+    public boolean caseFolding;
+
+    private byte[] bytes;
+    private char[] chars;
+
+    @Setup
+    public void setUp() {
+        bytes = Corpus.bytes(page);
+        chars = Corpus.chars(page);
+    }
+
+    @Benchmark
+    public WordCountTable words(InputBytes input) {
+        WordCountTable words = new WordCountTable();
+        WordTokenizer tokenizer = new WordTokenizer(words, caseFolding);
+        tokenizer.append(chars, 0, chars.length);
+        tokenizer.finish();
+        input.bytes += bytes.length;
+        return words;
+    }
+
+    @Benchmark
+    public WordCountTable html(InputBytes input, Blackhole blackhole) {
+        WordCountTable words = new WordCountTable();
+        WordTokenizer wordTokenizer = new WordTokenizer(words, caseFolding);
+        HtmlTokenizer tokenizer = newTokenizer(wordTokenizer, blackhole);
+        tokenizer.feed(chars, 0, chars.length);
+        tokenizer.finish();
+        wordTokenizer.finish();
+        input.bytes += bytes.length;
+        return words;
+    }
+
+    @Benchmark
+    public WordCountTable decode(InputBytes input, Blackhole blackhole) {
+        WordCountTable words = new WordCountTable();
+        WordTokenizer wordTokenizer = new WordTokenizer(words, caseFolding);
+        PageDecoder decoder = new PageDecoder(newTokenizer(wordTokenizer, blackhole));
+        decoder.onContent(ByteBuffer.wrap(bytes));
+        decoder.onComplete();
+        wordTokenizer.finish();
+        input.bytes += bytes.length;
+        return words;
+    }
+
+    private static HtmlTokenizer newTokenizer(WordTokenizer wordTokenizer, Blackhole blackhole) {
+        return new HtmlTokenizer(new HtmlHandler() {
+            @Override
+            public void onLink(String href) {
+                blackhole.consume(href);
+            }
+
+            @Override
+            public void onText(char[] chars, int offset, int length) {
+                wordTokenizer.append(chars, offset, length);
+            }
+        });
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class InputBytes {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+}
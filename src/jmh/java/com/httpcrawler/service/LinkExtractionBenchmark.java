@@ -0,0 +1,94 @@
+package com.httpcrawler.service;
+
+import com.httpcrawler.benchmark.Corpus;
+import com.httpcrawler.data.LinkScope;
+import com.httpcrawler.data.UrlFingerprint;
+import com.httpcrawler.parser.HtmlHandler;
+import com.httpcrawler.parser.HtmlTokenizer;
+import com.httpcrawler.parser.UrlCanonicalizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Link handling per page: extracting {@code <a href>} values, resolving them against the page URL into their
+ * canonical form, scoping them to the crawl root and fingerprinting the survivors for the visited set,
+ * together and canonicalization alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LinkExtractionBenchmark {
+
+    @Param({"small", "links", "cyrillic"})
+    public String page;
+
+    private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer(LinkScope.PREFIX,
+            Arrays.asList("utm_*", "gclid", "fbclid"));
+    private final String rootUrl = canonicalizer.canonicalize(Corpus.BASE_URL);
+
+    private char[] chars;
+    private String[] hrefs;
+
+    @Setup
+    public void setUp() {
+        chars = Corpus.chars(page);
+        List<String> links = new ArrayList<>();
+        HtmlTokenizer tokenizer = new HtmlTokenizer(new HtmlHandler() {
+            @Override
+            public void onLink(String href) {
+                links.add(href);
+            }
+
+            @Override
+            public void onText(char[] chars, int offset, int length) {
+            }
+        });
+        tokenizer.feed(chars, 0, chars.length);
+        tokenizer.finish();
+        hrefs = links.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public void extract(Blackhole blackhole) {
+        HtmlTokenizer tokenizer = new HtmlTokenizer(new HtmlHandler() {
+            @Override
+            public void onLink(String href) {
+                String link = canonicalizer.resolve(rootUrl, href);
+                if (link != null && canonicalizer.isInScope(rootUrl, link)) {
+                    blackhole.consume(UrlFingerprint.of(link));
+                }
+            }
+
+            @Override
+            public void onText(char[] chars, int offset, int length) {
+            }
+        });
+        tokenizer.feed(chars, 0, chars.length);
+        tokenizer.finish();
+    }
+
+    @Benchmark
+    public void normalize(Blackhole blackhole) {
+        for (String href : hrefs) {
+            blackhole.consume(canonicalizer.resolve(rootUrl, href));
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.httpcrawler.loadtest;
+
+import com.httpcrawler.HttpCrawlerApplication;
+import com.httpcrawler.data.CountingOptions;
+import com.httpcrawler.data.CrawlBudget;
+import com.httpcrawler.data.CrawlJob;
+import com.httpcrawler.data.CrawlProgress;
+import com.httpcrawler.data.CrawlStatus;
+import com.httpcrawler.service.TopWordFrequencyService;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * End-to-end crawl benchmark. Starts a {@link SyntheticSiteServer}, boots the application without its web
+ * server and runs {@code load-test.crawls} crawls of the synthetic site through
+ * {@link TopWordFrequencyService}, {@code load-test.concurrency} at a time. Then prints pages per second,
+ * crawl latency percentiles, peak heap and per-stage queue depths.
+ * <p>
+ * Every {@code load-test.*} option and every application property can be passed as {@code --name=value}.
+ * Unless overridden, the page store is disabled and per-host limits are lifted, so each crawl fetches the
+ * whole site from the server.
+ */
+@ParametersAreNonnullByDefault
+public final class LoadTest {
+
+    private static final long SAMPLE_PERIOD_MILLIS = 50;
+
+    private static final Map<String, String> APPLICATION_DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        APPLICATION_DEFAULTS.put("page-store.enabled", "false");
+        APPLICATION_DEFAULTS.put("page-client.max-in-flight-per-host", "1024");
+        APPLICATION_DEFAULTS.put("page-client.requests-per-second-per-host", "1000000");
+        APPLICATION_DEFAULTS.put("page-client.burst-per-host", "1000000");
+        APPLICATION_DEFAULTS.put("top-word-frequency-service.job-retention-seconds", "0");
+        APPLICATION_DEFAULTS.put("logging.level.com.httpcrawler", "warn");
+        APPLICATION_DEFAULTS.put("spring.main.banner-mode", "off");
+    }
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        APPLICATION_DEFAULTS.forEach((key, value) -> {
+            if (System.getProperty(key) == null) {
+                System.setProperty(key, value);
+            }
+        });
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(HttpCrawlerApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args)) {
+            Environment environment = context.getEnvironment();
+            SyntheticSite site = new SyntheticSite(
+                    environment.getProperty("load-test.pages", Integer.class, 2_000),
+                    environment.getProperty("load-test.fan-out", Integer.class, 8),
+                    environment.getProperty("load-test.page-bytes", Integer.class, 16 * 1024),
+                    environment.getProperty("load-test.error-rate", Double.class, 0.01),
+                    environment.getProperty("load-test.seed", Long.class, 1L)
+            );
+            long latencyMillis = environment.getProperty("load-test.latency-millis", Long.class, 20L);
+            int depth = environment.getProperty("load-test.depth", Integer.class, 5);
+            int crawls = environment.getProperty("load-test.crawls", Integer.class, 20);
+            int warmupCrawls = environment.getProperty("load-test.warmup-crawls", Integer.class, 2);
+            int concurrency = environment.getProperty("load-test.concurrency", Integer.class, 4);
+            long crawlTimeoutSeconds = environment.getProperty("load-test.crawl-timeout-seconds", Long.class, 600L);
+            TopWordFrequencyService service = context.getBean(TopWordFrequencyService.class);
+
+            try (SyntheticSiteServer server = new SyntheticSiteServer(site, latencyMillis)) {
+                System.out.printf("Site: %s, %d pages, fan-out %d, %d bytes of text per page, %d ms latency, "
+                                + "%.2f%% errors%n", server.rootUrl(), site.pageCount, site.fanOut, site.pageBytes,
+                        latencyMillis, site.errorRate * 100);
+                System.out.printf("Crawls: %d at depth %d, %d concurrent, %d warm-up%n",
+                        crawls, depth, concurrency, warmupCrawls);
+                new Run(service, server.rootUrl(), depth, concurrency, crawlTimeoutSeconds)
+                        .execute(warmupCrawls);
+                long requestsBefore = server.requests();
+                long errorsBefore = server.errors();
+                Report report = new Run(service, server.rootUrl(), depth, concurrency, crawlTimeoutSeconds)
+                        .execute(crawls);
+                report.print(server.requests() - requestsBefore, server.errors() - errorsBefore);
+            }
+        }
+    }
+
+    private static class Run {
+        private final TopWordFrequencyService service;
+        private final String rootUrl;
+        private final int depth;
+        private final int concurrency;
+        private final long crawlTimeoutSeconds;
+        private final Set<CrawlJob> running;
+        private final Report report;
+
+        Run(TopWordFrequencyService service, String rootUrl, int depth, int concurrency, long crawlTimeoutSeconds) {
+            this.service = service;
+            this.rootUrl = rootUrl;
+            this.depth = depth;
+            this.concurrency = concurrency;
+            this.crawlTimeoutSeconds = crawlTimeoutSeconds;
+            this.running = ConcurrentHashMap.newKeySet();
+            this.report = new Report();
+        }
+
+        Report execute(int crawls) throws Exception {
+            if (crawls <= 0) {
+                return report;
+            }
+            System.gc();
+            ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+            ExecutorService drivers = Executors.newFixedThreadPool(concurrency);
+            AtomicInteger remaining = new AtomicInteger(crawls);
+            long startNanos = System.nanoTime();
+            try {
+                sampler.scheduleAtFixedRate(this::sample, 0, SAMPLE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < concurrency; i++) {
+                    futures.add(drivers.submit(() -> {
+                        while (remaining.getAndDecrement() > 0) {
+                            crawl();
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                sampler.shutdownNow();
+                drivers.shutdownNow();
+            }
+            report.elapsedNanos = System.nanoTime() - startNanos;
+            return report;
+        }
+
+        private void crawl() throws Exception {
+            CrawlJob job = service.startCrawl(rootUrl, depth, CountingOptions.EXACT, CrawlBudget.UNLIMITED, false);
+            running.add(job);
+            try {
+                job.completion().get(crawlTimeoutSeconds, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                service.cancel(job.id);
+            } finally {
+                running.remove(job);
+            }
+            CrawlProgress progress = service.getProgress(job);
+            report.crawlFinished(job.status(), job.finishedAtMillis() - job.startedAtMillis,
+                    progress.pagesFetched, progress.pagesFailed);
+        }
+
+        private void sample() {
+            long queued = 0;
+            long fetching = 0;
+            long parsing = 0;
+            long counting = 0;
+            for (CrawlJob job : running) {
+                CrawlProgress progress = service.getProgress(job);
+                queued += progress.pagesPending - progress.pagesFetching - progress.pagesParsing
+                        - progress.pagesCounting;
+                fetching += progress.pagesFetching;
+                parsing += progress.pagesParsing;
+                counting += progress.pagesCounting;
+            }
+            report.sample(queued, fetching, parsing, counting);
+        }
+    }
+
+    private static class Report {
+        private static final String[] STAGES = {"QUEUED", "FETCHING", "PARSING", "COUNTING"};
+
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        private final Map<CrawlStatus, AtomicInteger> statuses = new ConcurrentHashMap<>();
+        private final long[] stageSums = new long[STAGES.length];
+        private final long[] stageMaxima = new long[STAGES.length];
+        private long samples;
+        private long peakHeapBytes;
+        private long pagesFetched;
+        private long pagesFailed;
+        private long elapsedNanos;
+
+        synchronized void crawlFinished(CrawlStatus status, long latencyMillis, long fetched, long failed) {
+            statuses.computeIfAbsent(status, s -> new AtomicInteger()).incrementAndGet();
+            latencies.add(latencyMillis);
+            pagesFetched += fetched;
+            pagesFailed += failed;
+        }
+
+        synchronized void sample(long... stageDepths) {
+            for (int i = 0; i < stageDepths.length; i++) {
+                stageSums[i] += stageDepths[i];
+                stageMaxima[i] = Math.max(stageMaxima[i], stageDepths[i]);
+            }
+            samples++;
+            peakHeapBytes = Math.max(peakHeapBytes, memory.getHeapMemoryUsage().getUsed());
+        }
+
+        synchronized void print(long requests, long serverErrors) {
+            double seconds = elapsedNanos / 1e9;
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+            System.out.printf("%nCrawls:       %d in %.1f s %s%n", sorted.length, seconds, statuses);
+            System.out.printf("Pages:        %d fetched, %d failed, %d server errors, %d requests%n",
+                    pagesFetched, pagesFailed, serverErrors, requests);
+            System.out.printf("Throughput:   %.1f pages/s%n", (pagesFetched + pagesFailed) / seconds);
+            System.out.printf("Latency:      p50 %d ms, p99 %d ms, max %d ms%n",
+                    percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 1.0));
+            System.out.printf("Peak heap:    %.1f MiB of %.1f MiB max%n", peakHeapBytes / 1048576.0,
+                    memory.getHeapMemoryUsage().getMax() / 1048576.0);
+            System.out.printf("Stage depths: (mean / max pages over %d samples)%n", samples);
+            for (int i = 0; i < STAGES.length; i++) {
+                System.out.printf("  %-10s %8.1f / %d%n", STAGES[i],
+                        samples == 0 ? 0.0 : (double) stageSums[i] / samples, stageMaxima[i]);
+            }
+        }
+
+        private static long percentile(long[] sorted, double quantile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.httpcrawler.loadtest;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic website of {@code pageCount} pages: page {@code i} links to its {@code fanOut} children
+ * {@code i * fanOut + 1 ...} of a complete tree plus {@code fanOut / 2} pseudo random pages, and carries
+ * about {@code pageBytes} of text drawn from a Zipf distributed vocabulary. The same seed always produces
+ * the same site, so runs are comparable.
+ */
+@Immutable
+@ParametersAreNonnullByDefault
+public class SyntheticSite {
+
+    private static final int VOCABULARY_SIZE = 50_000;
+    private static final int WORDS_PER_PARAGRAPH = 80;
+
+    public final int pageCount;
+    public final int fanOut;
+    public final int pageBytes;
+    public final double errorRate;
+    public final long seed;
+
+    public SyntheticSite(int pageCount, int fanOut, int pageBytes, double errorRate, long seed) {
+        if (pageCount <= 0 || fanOut < 0 || pageBytes < 0 || errorRate < 0 || errorRate > 1) {
+            throw new IllegalArgumentException("Invalid site: pages=" + pageCount + ", fan-out=" + fanOut
+                    + ", page-bytes=" + pageBytes + ", error-rate=" + errorRate);
+        }
+        this.pageCount = pageCount;
+        this.fanOut = fanOut;
+        this.pageBytes = pageBytes;
+        this.errorRate = errorRate;
+        this.seed = seed;
+    }
+
+    public static String path(int page) {
+        return page == 0 ? "/" : "/page/" + page;
+    }
+
+    /**
+     * @return the page index for {@code path}, or {@code -1} if the site has no such page.
+     */
+    public int page(String path) {
+        if (path.equals("/") || path.isEmpty()) {
+            return 0;
+        }
+        if (!path.startsWith("/page/")) {
+            return -1;
+        }
+        try {
+            int page = Integer.parseInt(path.substring("/page/".length()));
+            return page > 0 && page < pageCount ? page : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return {@code true} if the page always answers with a server error.
+     */
+    public boolean isBroken(int page) {
+        return page != 0 && random(page, 1).nextDouble() < errorRate;
+    }
+
+    public byte[] render(int page) {
+        SplittableRandom random = random(page, 0);
+        StringBuilder html = new StringBuilder(pageBytes + 1024);
+        html.append("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n<title>Page ")
+                .append(page)
+                .append("</title>\n</head>\n<body>\n<ul>\n");
+        for (int i = 1; i <= fanOut; i++) {
+            long child = (long) page * fanOut + i;
+            if (child < pageCount) {
+                appendLink(html, (int) child);
+            }
+        }
+        for (int i = 0; i < fanOut / 2; i++) {
+            appendLink(html, random.nextInt(pageCount));
+        }
+        html.append("</ul>\n");
+        int textEnd = html.length() + pageBytes;
+        while (html.length() < textEnd) {
+            html.append("<p>");
+            for (int i = 0; i < WORDS_PER_PARAGRAPH; i++) {
+                if (i > 0) {
+                    html.append(' ');
+                }
+                appendWord(html, zipfRank(random));
+            }
+            html.append("</p>\n");
+        }
+        html.append("</body>\n</html>\n");
+        return html.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private SplittableRandom random(int page, int stream) {
+        return new SplittableRandom(seed * 31 + page * 2L + stream);
+    }
+
+    private static void appendLink(StringBuilder html, int page) {
+        html.append("<li><a href=\"").append(path(page)).append("\">Page ").append(page).append("</a></li>\n");
+    }
+
+    private static int zipfRank(SplittableRandom random) {
+        double harmonic = Math.log(VOCABULARY_SIZE) + 0.5772;
+        return (int) Math.min(VOCABULARY_SIZE - 1, Math.exp(random.nextDouble() * harmonic) - 1);
+    }
+
+    private static void appendWord(StringBuilder html, int rank) {
+        int value = rank;
+        do {
+            html.append((char) ('a' + value % 26));
+            value = value / 26 - 1;
+        } while (value >= 0);
+    }
+}
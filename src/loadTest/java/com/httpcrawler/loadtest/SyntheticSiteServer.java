@@ -0,0 +1,101 @@
+package com.httpcrawler.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serves a {@link SyntheticSite} on a loopback port. Every response is delayed by {@code latencyMillis};
+ * handlers run on virtual threads, so the delay costs no platform thread.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class SyntheticSiteServer implements AutoCloseable {
+
+    private static final byte[] SERVER_ERROR =
+            "<html><body>Internal error</body></html>".getBytes(StandardCharsets.UTF_8);
+
+    private final SyntheticSite site;
+    private final long latencyMillis;
+    private final HttpServer server;
+    private final ExecutorService executorService;
+    private final LongAdder requests;
+    private final LongAdder errors;
+    private final LongAdder bytesSent;
+
+    public SyntheticSiteServer(SyntheticSite site, long latencyMillis) throws IOException {
+        this.site = site;
+        this.latencyMillis = latencyMillis;
+        this.executorService = Executors.newVirtualThreadPerTaskExecutor();
+        this.requests = new LongAdder();
+        this.errors = new LongAdder();
+        this.bytesSent = new LongAdder();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(executorService);
+        this.server.start();
+    }
+
+    public String rootUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public long requests() {
+        return requests.sum();
+    }
+
+    public long errors() {
+        return errors.sum();
+    }
+
+    public long bytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executorService.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.increment();
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            int page = site.page(exchange.getRequestURI().getPath());
+            if (page < 0) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            if (site.isBroken(page)) {
+                errors.increment();
+                send(exchange, 500, SERVER_ERROR);
+                return;
+            }
+            send(exchange, 200, site.render(page));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+        bytesSent.add(body.length);
+    }
+}
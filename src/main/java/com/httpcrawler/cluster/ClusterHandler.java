@@ -0,0 +1,32 @@
+package com.httpcrawler.cluster;
+
+import com.httpcrawler.data.CountingOptions;
+import com.httpcrawler.data.CrawlProgress;
+import com.httpcrawler.data.Root;
+import com.httpcrawler.data.WordCounter;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * The local crawl pipeline as seen by the other nodes.
+ */
+@ParametersAreNonnullByDefault
+public interface ClusterHandler {
+
+    void prepare(Root root, CountingOptions options, boolean offline);
+
+    void accept(Root root, String url, int depth);
+
+    CrawlProgress progress(Root root);
+
+    /**
+     * @return whether the local part of the crawl turned away pages or links
+     */
+    boolean isTruncated(Root root);
+
+    @Nullable
+    WordCounter result(Root root);
+
+    void clean(Root root);
+}
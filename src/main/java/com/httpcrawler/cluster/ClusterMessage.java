@@ -0,0 +1,269 @@
+package com.httpcrawler.cluster;
+
+import com.httpcrawler.data.CountingMode;
+import com.httpcrawler.data.CountingOptions;
+import com.httpcrawler.data.CrawlProgress;
+import com.httpcrawler.data.Root;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A request between nodes or its reply. Every message names the crawl it belongs to; the other fields are
+ * set only for the types that use them. The links of one message and the words of one reply are kept under
+ * {@link #MAX_LINKS_BYTES} and {@link #MAX_WORDS_BYTES}, so no encoded message exceeds
+ * {@link #MAX_ENCODED_BYTES}.
+ */
+@Immutable
+@ParametersAreNonnullByDefault
+public class ClusterMessage {
+
+    public enum Type {
+        /** Prepares a crawl on a node; carries the counting options. */
+        START,
+        /** Hands discovered links to the node that owns them. */
+        LINKS,
+        /** Asks for the progress and link counters of a node; answered with the same type. */
+        STATUS,
+        /** Asks for one shard of a node's word counts from an offset; answered with the same type. */
+        WORDS,
+        /** Drops a crawl on a node. */
+        CLEAN,
+        ACK
+    }
+
+    public static final int MAX_LINKS_BYTES = 4 * 1024 * 1024;
+    public static final int MAX_WORDS_BYTES = 4 * 1024 * 1024;
+    public static final int MAX_ENCODED_BYTES = 16 * 1024 * 1024;
+
+    public final Type type;
+    public final Root root;
+    @Nullable
+    public final CountingOptions options;
+    public final boolean offline;
+    /**
+     * Whether a node turned away pages or links of the crawl, or could not deliver some of them.
+     */
+    public final boolean truncated;
+    public final List<String> urls;
+    public final int[] depths;
+    @Nullable
+    public final CrawlProgress progress;
+    public final long linksSent;
+    public final long linksReceived;
+    public final int shard;
+    public final int shardCount;
+    /**
+     * The first word of the shard a request asks for, or in a reply the offset to ask for next, {@code 0} once
+     * the shard is complete.
+     */
+    public final int offset;
+    public final Map<String, Long> words;
+
+    private ClusterMessage(Type type, Root root, @Nullable CountingOptions options, boolean offline,
+                           boolean truncated, List<String> urls, int[] depths, @Nullable CrawlProgress progress,
+                           long linksSent, long linksReceived, int shard, int shardCount, int offset,
+                           Map<String, Long> words) {
+        this.type = type;
+        this.root = root;
+        this.options = options;
+        this.offline = offline;
+        this.truncated = truncated;
+        this.urls = urls;
+        this.depths = depths;
+        this.progress = progress;
+        this.linksSent = linksSent;
+        this.linksReceived = linksReceived;
+        this.shard = shard;
+        this.shardCount = shardCount;
+        this.offset = offset;
+        this.words = words;
+    }
+
+    public static ClusterMessage start(Root root, CountingOptions options, boolean offline) {
+        return new ClusterMessage(Type.START, root, options, offline, false, Collections.emptyList(), new int[0],
+                null, 0, 0, 0, 0, 0, Collections.emptyMap());
+    }
+
+    public static ClusterMessage links(Root root, List<String> urls, int[] depths) {
+        return new ClusterMessage(Type.LINKS, root, null, false, false, urls, depths, null, 0, 0, 0, 0, 0,
+                Collections.emptyMap());
+    }
+
+    public static ClusterMessage status(Root root) {
+        return of(Type.STATUS, root);
+    }
+
+    public static ClusterMessage status(Root root, CrawlProgress progress, long linksSent, long linksReceived,
+                                        boolean truncated) {
+        return new ClusterMessage(Type.STATUS, root, null, false, truncated, Collections.emptyList(), new int[0],
+                progress, linksSent, linksReceived, 0, 0, 0, Collections.emptyMap());
+    }
+
+    public static ClusterMessage words(Root root, int shard, int offset) {
+        return new ClusterMessage(Type.WORDS, root, null, false, false, Collections.emptyList(), new int[0], null,
+                0, 0, shard, 0, offset, Collections.emptyMap());
+    }
+
+    /**
+     * @param offset the offset of the rest of the shard, or {@code 0} if {@code words} completes it
+     */
+    public static ClusterMessage words(Root root, int shard, int shardCount, int offset, Map<String, Long> words) {
+        return new ClusterMessage(Type.WORDS, root, null, false, false, Collections.emptyList(), new int[0], null,
+                0, 0, shard, shardCount, offset, words);
+    }
+
+    public static ClusterMessage of(Type type, Root root) {
+        return new ClusterMessage(type, root, null, false, false, Collections.emptyList(), new int[0], null, 0, 0,
+                0, 0, 0, Collections.emptyMap());
+    }
+
+    /**
+     * @return an upper bound of the bytes a URL takes in a {@link Type#LINKS} message
+     */
+    static int linkBytes(String url) {
+        return 2 * Integer.BYTES + 3 * url.length();
+    }
+
+    /**
+     * @return an upper bound of the bytes a word takes in a {@link Type#WORDS} message
+     */
+    static int wordBytes(String word) {
+        return Integer.BYTES + 3 * word.length() + Long.BYTES;
+    }
+
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type.ordinal());
+            writeString(out, root.urlString);
+            out.writeInt(root.depth);
+            out.writeInt(root.rand);
+            switch (type) {
+                case START:
+                    out.writeByte(options.mode.ordinal());
+                    out.writeDouble(options.epsilon);
+                    out.writeDouble(options.delta);
+                    out.writeBoolean(offline);
+                    break;
+                case LINKS:
+                    out.writeInt(urls.size());
+                    for (int i = 0; i < urls.size(); i++) {
+                        writeString(out, urls.get(i));
+                        out.writeInt(depths[i]);
+                    }
+                    break;
+                case STATUS:
+                    out.writeBoolean(progress != null);
+                    if (progress != null) {
+                        out.writeLong(progress.pagesFetched);
+                        out.writeLong(progress.pagesFailed);
+                        out.writeLong(progress.pagesPending);
+                        out.writeLong(progress.pagesFetching);
+                        out.writeLong(progress.pagesParsing);
+                        out.writeLong(progress.pagesCounting);
+                        out.writeLong(progress.linksDropped);
+                        out.writeLong(progress.wordsCounted);
+                        out.writeLong(progress.distinctWords);
+                        out.writeLong(linksSent);
+                        out.writeLong(linksReceived);
+                        out.writeBoolean(truncated);
+                    }
+                    break;
+                case WORDS:
+                    out.writeInt(shard);
+                    out.writeInt(shardCount);
+                    out.writeInt(offset);
+                    out.writeInt(words.size());
+                    for (Map.Entry<String, Long> entry : words.entrySet()) {
+                        writeString(out, entry.getKey());
+                        out.writeLong(entry.getValue());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static ClusterMessage decode(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int ordinal = in.readUnsignedByte();
+        if (ordinal >= Type.values().length) {
+            throw new IOException("Unknown cluster message type " + ordinal);
+        }
+        Type type = Type.values()[ordinal];
+        Root root = new Root(readString(in), in.readInt(), in.readInt());
+        switch (type) {
+            case START: {
+                CountingMode mode = CountingMode.values()[in.readUnsignedByte()];
+                double epsilon = in.readDouble();
+                double delta = in.readDouble();
+                return start(root, mode == CountingMode.APPROXIMATE
+                        ? CountingOptions.approximate(epsilon, delta)
+                        : CountingOptions.EXACT, in.readBoolean());
+            }
+            case LINKS: {
+                int count = in.readInt();
+                List<String> urls = new ArrayList<>(count);
+                int[] depths = new int[count];
+                for (int i = 0; i < count; i++) {
+                    urls.add(readString(in));
+                    depths[i] = in.readInt();
+                }
+                return links(root, urls, depths);
+            }
+            case STATUS: {
+                if (!in.readBoolean()) {
+                    return status(root);
+                }
+                CrawlProgress progress = new CrawlProgress(in.readLong(), in.readLong(), in.readLong(),
+                        in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong());
+                return status(root, progress, in.readLong(), in.readLong(), in.readBoolean());
+            }
+            case WORDS: {
+                int shard = in.readInt();
+                int shardCount = in.readInt();
+                int offset = in.readInt();
+                int count = in.readInt();
+                Map<String, Long> words = new LinkedHashMap<>(count * 2);
+                for (int i = 0; i < count; i++) {
+                    words.put(readString(in), in.readLong());
+                }
+                return words(root, shard, shardCount, offset, words);
+            }
+            default:
+                return of(type, root);
+        }
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,497 @@
+package com.httpcrawler.cluster;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.httpcrawler.data.ClusterTransportMode;
+import com.httpcrawler.data.CountingOptions;
+import com.httpcrawler.data.CrawlProgress;
+import com.httpcrawler.data.PartitionMode;
+import com.httpcrawler.data.Root;
+import com.httpcrawler.data.UrlFingerprint;
+import com.httpcrawler.data.WordCountTable;
+import com.httpcrawler.data.WordCounter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.PreDestroy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits one crawl across the nodes listed in {@code cluster.nodes}. Every URL is owned by exactly one node,
+ * chosen by a hash of its host or of the whole URL; a node fetches and counts only the URLs it owns and
+ * forwards the links it discovers to their owners in batches. The node the crawl was started on coordinates
+ * it: it decides when the crawl is over and merges the word counts of the other nodes into its own.
+ * <p>
+ * The crawl is over when two consecutive status waves find every node idle, the links sent by all nodes
+ * equal the links received, and both waves saw the same totals. A link counts as received only after its
+ * owner has queued it, so a link in transit always keeps the totals apart.
+ */
+@Service
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class ClusterService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClusterService.class);
+
+    private final boolean enabled;
+    private final int nodeId;
+    private final int nodeCount;
+    private final PartitionMode partitionMode;
+    private final int batchSize;
+    private final long terminationCheckMillis;
+    private final long requestTimeoutMillis;
+    private final ConcurrentMap<Root, LinkOutbox> outboxes;
+    private final ConcurrentMap<Root, CrawlProgress> remoteProgress;
+    private final Set<Root> remoteTruncated;
+    private final ConcurrentMap<Root, Boolean> coordinated;
+    @Nullable
+    private final ClusterTransport transport;
+    @Nullable
+    private final ScheduledExecutorService executorService;
+    @Nullable
+    private volatile ClusterHandler handler;
+
+    public ClusterService(
+            @Value("${cluster.enabled:false}") boolean enabled,
+            @Value("${cluster.node-id:0}") int nodeId,
+            @Value("${cluster.nodes:localhost:7070}") List<String> nodes,
+            @Value("${cluster.transport:TCP}") ClusterTransportMode transportMode,
+            @Value("${cluster.partitioning:URL}") PartitionMode partitionMode,
+            @Value("${cluster.batch-size:256}") int batchSize,
+            @Value("${cluster.flush-interval-millis:50}") long flushIntervalMillis,
+            @Value("${cluster.termination-check-millis:200}") long terminationCheckMillis,
+            @Value("${cluster.connect-timeout-millis:5000}") int connectTimeoutMillis,
+            @Value("${cluster.request-timeout-millis:10000}") long requestTimeoutMillis,
+            @Value("${cluster.thread-count:4}") int threadCount
+    ) {
+        if (enabled && (nodeId < 0 || nodeId >= nodes.size())) {
+            throw new IllegalArgumentException("cluster.node-id " + nodeId + " is not an index of cluster.nodes");
+        }
+        this.enabled = enabled;
+        this.nodeId = nodeId;
+        this.nodeCount = nodes.size();
+        this.partitionMode = partitionMode;
+        this.batchSize = batchSize;
+        this.terminationCheckMillis = terminationCheckMillis;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        this.outboxes = new ConcurrentHashMap<>();
+        this.remoteProgress = new ConcurrentHashMap<>();
+        this.remoteTruncated = ConcurrentHashMap.newKeySet();
+        this.coordinated = new ConcurrentHashMap<>();
+        if (!enabled) {
+            this.transport = null;
+            this.executorService = null;
+            return;
+        }
+        this.transport = transportMode == ClusterTransportMode.IN_PROCESS
+                ? new InProcessTransport(nodes, nodeId, threadCount)
+                : new TcpTransport(socketAddresses(nodes), nodeId, threadCount, connectTimeoutMillis);
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(
+                threadCount,
+                new ThreadFactoryBuilder()
+                        .setNameFormat(getClass().getSimpleName() + "-TaskExecutor-%d")
+                        .setPriority(Thread.NORM_PRIORITY)
+                        .setUncaughtExceptionHandler((t, e) -> LOGGER.error(e.getMessage(), e))
+                        .setDaemon(true)
+                        .build()
+        );
+        scheduler.setRemoveOnCancelPolicy(true);
+        this.executorService = scheduler;
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Connects the local crawl pipeline and starts serving the other nodes.
+     */
+    public void register(ClusterHandler handler) {
+        this.handler = handler;
+        if (transport == null) {
+            return;
+        }
+        try {
+            transport.start(this::handle);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot start cluster node " + nodeId, e);
+        }
+    }
+
+    public boolean isLocal(String url) {
+        return !enabled || ownerOf(url) == nodeId;
+    }
+
+    /**
+     * Queues a link for the node that owns it.
+     */
+    public void forward(Root root, String url, int depth) {
+        LinkOutbox outbox = outboxes.get(root);
+        if (outbox == null) {
+            return;
+        }
+        int owner = ownerOf(url);
+        LinkOutbox.Batch batch = outbox.add(owner, url, depth);
+        if (batch != null) {
+            executorService.execute(() -> send(root, outbox, owner, batch));
+        }
+    }
+
+    /**
+     * Prepares the crawl on every other node; returns once all of them are ready to receive its links.
+     */
+    public void startCrawl(Root root, CountingOptions options, boolean offline) {
+        outboxes.putIfAbsent(root, new LinkOutbox(nodeCount, batchSize));
+        coordinated.put(root, true);
+        try {
+            CompletableFuture.allOf(broadcast(ClusterMessage.start(root, options, offline))
+                            .toArray(new CompletableFuture<?>[0]))
+                    .get(requestTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while starting crawl of " + root.urlString);
+        } catch (Exception e) {
+            throw new UncheckedIOException(new IOException("Cannot start crawl of " + root.urlString
+                    + " on all cluster nodes", e));
+        }
+    }
+
+    /**
+     * Completes when the crawl is over on every node. Fails as soon as the local crawl fails or a node stops
+     * answering, and is cancelled when the local crawl is.
+     */
+    public CompletableFuture<Void> awaitTermination(Root root, CompletableFuture<Void> localCompletion) {
+        TerminationCheck check = new TerminationCheck(root);
+        localCompletion.whenComplete((ignored, e) -> {
+            if (e instanceof CancellationException) {
+                check.completion.cancel(false);
+            } else if (e != null) {
+                check.completion.completeExceptionally(e);
+            }
+        });
+        check.schedule();
+        return check.completion;
+    }
+
+    /**
+     * @return the summed progress of the other nodes, as of the last status wave
+     */
+    public CrawlProgress getRemoteProgress(Root root) {
+        return remoteProgress.getOrDefault(root, CrawlProgress.EMPTY);
+    }
+
+    /**
+     * @return whether links of the crawl could not be forwarded from this node, or another node reported the
+     * crawl truncated as of the last status wave
+     */
+    public boolean isTruncated(Root root) {
+        LinkOutbox outbox = outboxes.get(root);
+        return (outbox != null && outbox.isTruncated()) || remoteTruncated.contains(root);
+    }
+
+    /**
+     * Adds the word counts of every other node to {@code wordCounter}, one shard at a time. Does nothing if
+     * this node does not coordinate the crawl or has already collected it. From then on the remote progress
+     * no longer reports words, which are counted locally.
+     */
+    public void collect(Root root, WordCounter wordCounter) {
+        if (coordinated.replace(root, true, false) != Boolean.TRUE) {
+            return;
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            if (node == nodeId) {
+                continue;
+            }
+            int shardCount = 1;
+            for (int shard = 0; shard < shardCount; shard++) {
+                int offset = 0;
+                do {
+                    ClusterMessage reply = request(node, ClusterMessage.words(root, shard, offset));
+                    shardCount = reply.shardCount;
+                    offset = reply.offset;
+                    merge(wordCounter, reply.words);
+                } while (offset > 0);
+            }
+        }
+        remoteProgress.computeIfPresent(root, (ignored, progress) -> new CrawlProgress(progress.pagesFetched,
+                progress.pagesFailed, progress.pagesPending, progress.pagesFetching, progress.pagesParsing,
+                progress.pagesCounting, progress.linksDropped, 0, 0));
+    }
+
+    public void cleanForRoot(Root root) {
+        outboxes.remove(root);
+        remoteProgress.remove(root);
+        remoteTruncated.remove(root);
+        if (coordinated.remove(root) != null) {
+            for (CompletableFuture<ClusterMessage> reply : broadcast(ClusterMessage.of(ClusterMessage.Type.CLEAN,
+                    root))) {
+                reply.whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        LOGGER.warn("Cannot clean crawl of [{}] on a cluster node", root.urlString, e);
+                    }
+                });
+            }
+        }
+    }
+
+    @PreDestroy
+    protected void stop() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+        if (transport != null) {
+            transport.close();
+        }
+    }
+
+    private ClusterMessage handle(ClusterMessage message) {
+        ClusterHandler local = handler;
+        Root root = message.root;
+        switch (message.type) {
+            case START:
+                outboxes.putIfAbsent(root, new LinkOutbox(nodeCount, batchSize));
+                local.prepare(root, message.options, message.offline);
+                return ClusterMessage.of(ClusterMessage.Type.ACK, root);
+            case LINKS: {
+                LinkOutbox outbox = outboxes.get(root);
+                if (outbox != null) {
+                    for (int i = 0; i < message.urls.size(); i++) {
+                        local.accept(root, message.urls.get(i), message.depths[i]);
+                    }
+                    outbox.received(message.urls.size());
+                }
+                return ClusterMessage.of(ClusterMessage.Type.ACK, root);
+            }
+            case STATUS:
+                return localStatus(root);
+            case WORDS:
+                return localWords(root, message.shard, message.offset);
+            case CLEAN:
+                outboxes.remove(root);
+                local.clean(root);
+                return ClusterMessage.of(ClusterMessage.Type.ACK, root);
+            default:
+                throw new IllegalArgumentException("Unexpected cluster message " + message.type);
+        }
+    }
+
+    private ClusterMessage localStatus(Root root) {
+        LinkOutbox outbox = outboxes.get(root);
+        CrawlProgress progress = handler.progress(root);
+        boolean truncated = handler.isTruncated(root);
+        return outbox == null
+                ? ClusterMessage.status(root, progress, 0, 0, truncated)
+                : ClusterMessage.status(root, progress, outbox.sent(), outbox.received(),
+                        truncated || outbox.isTruncated());
+    }
+
+    /**
+     * Answers with the words of a shard from {@code offset} on, up to {@link ClusterMessage#MAX_WORDS_BYTES}. The
+     * crawl has finished by then, so the shard keeps its order between the requests for its parts.
+     */
+    private ClusterMessage localWords(Root root, int shard, int offset) {
+        WordCounter wordCounter = handler.result(root);
+        if (wordCounter == null || shard >= wordCounter.shardCount()) {
+            return ClusterMessage.words(root, shard, 0, 0, Collections.emptyMap());
+        }
+        Map<String, Long> words = new LinkedHashMap<>();
+        int[] index = new int[1];
+        int[] next = new int[1];
+        long[] bytes = new long[1];
+        wordCounter.forEach(shard, (word, count) -> {
+            int i = index[0]++;
+            if (i < offset || next[0] > 0) {
+                return;
+            }
+            bytes[0] += ClusterMessage.wordBytes(word);
+            if (bytes[0] > ClusterMessage.MAX_WORDS_BYTES && !words.isEmpty()) {
+                next[0] = i;
+                return;
+            }
+            words.put(word, count);
+        });
+        return ClusterMessage.words(root, shard, wordCounter.shardCount(), next[0], words);
+    }
+
+    private void flush() {
+        for (Map.Entry<Root, LinkOutbox> entry : outboxes.entrySet()) {
+            for (int node = 0; node < nodeCount; node++) {
+                LinkOutbox.Batch batch = entry.getValue().drain(node);
+                if (batch != null) {
+                    send(entry.getKey(), entry.getValue(), node, batch);
+                }
+            }
+        }
+    }
+
+    private void send(Root root, LinkOutbox outbox, int node, LinkOutbox.Batch batch) {
+        transport.send(node, ClusterMessage.links(root, batch.urls, batch.depths))
+                .orTimeout(requestTimeoutMillis, TimeUnit.MILLISECONDS)
+                .whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        LOGGER.warn("Cannot forward {} links of [{}] to cluster node {}, truncating the crawl",
+                                batch.urls.size(), root.urlString, node, e);
+                        outbox.lost(batch.urls.size());
+                    }
+                });
+    }
+
+    private ClusterMessage request(int node, ClusterMessage message) {
+        try {
+            return transport.send(node, message).get(requestTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for cluster node " + node);
+        } catch (Exception e) {
+            throw new UncheckedIOException(new IOException("Cluster node " + node + " did not answer "
+                    + message.type, e));
+        }
+    }
+
+    private List<CompletableFuture<ClusterMessage>> broadcast(ClusterMessage message) {
+        List<CompletableFuture<ClusterMessage>> replies = new ArrayList<>(nodeCount);
+        for (int node = 0; node < nodeCount; node++) {
+            if (node != nodeId) {
+                replies.add(transport.send(node, message));
+            }
+        }
+        return replies;
+    }
+
+    private int ownerOf(String url) {
+        String key = url;
+        if (partitionMode == PartitionMode.HOST) {
+            try {
+                String host = URI.create(url).getHost();
+                if (host != null) {
+                    key = host.toLowerCase(Locale.ROOT);
+                }
+            } catch (IllegalArgumentException e) {
+                LOGGER.debug("", e);
+            }
+        }
+        return (int) Math.floorMod(UrlFingerprint.of(key), (long) nodeCount);
+    }
+
+    private static void merge(WordCounter wordCounter, Map<String, Long> words) {
+        WordCountTable table = new WordCountTable(words.size());
+        words.forEach(table::add);
+        wordCounter.addAll(table);
+    }
+
+    private static List<InetSocketAddress> socketAddresses(List<String> nodes) {
+        List<InetSocketAddress> addresses = new ArrayList<>(nodes.size());
+        for (String node : nodes) {
+            int colon = node.lastIndexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Cluster node [" + node + "] is not host:port");
+            }
+            addresses.add(new InetSocketAddress(node.substring(0, colon).trim(),
+                    Integer.parseInt(node.substring(colon + 1).trim())));
+        }
+        return addresses;
+    }
+
+    /**
+     * One status wave after another until the crawl is over; the previous wave is only read and written by
+     * the wave that follows it.
+     */
+    private class TerminationCheck {
+        private final Root root;
+        private final CompletableFuture<Void> completion;
+        private long previousSent;
+        private long previousReceived;
+        private boolean previousQuiet;
+
+        TerminationCheck(Root root) {
+            this.root = root;
+            this.completion = new CompletableFuture<>();
+        }
+
+        void schedule() {
+            if (!completion.isDone() && outboxes.containsKey(root)) {
+                executorService.schedule(this::wave, terminationCheckMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void wave() {
+            List<CompletableFuture<ClusterMessage>> replies = broadcast(ClusterMessage.status(root));
+            CompletableFuture.allOf(replies.toArray(new CompletableFuture<?>[0]))
+                    .orTimeout(requestTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .whenComplete((ignored, e) -> {
+                        if (e != null) {
+                            completion.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+                            return;
+                        }
+                        List<ClusterMessage> statuses = new ArrayList<>(replies.size() + 1);
+                        for (CompletableFuture<ClusterMessage> reply : replies) {
+                            statuses.add(reply.join());
+                        }
+                        evaluate(localStatus(root), statuses);
+                        schedule();
+                    });
+        }
+
+        private void evaluate(ClusterMessage local, List<ClusterMessage> remote) {
+            boolean idle = local.progress.pagesPending == 0;
+            long sent = local.linksSent;
+            long received = local.linksReceived;
+            long[] sum = new long[9];
+            boolean truncated = false;
+            for (ClusterMessage status : remote) {
+                CrawlProgress progress = status.progress;
+                truncated |= status.truncated;
+                idle &= progress.pagesPending == 0;
+                sent += status.linksSent;
+                received += status.linksReceived;
+                sum[0] += progress.pagesFetched;
+                sum[1] += progress.pagesFailed;
+                sum[2] += progress.pagesPending;
+                sum[3] += progress.pagesFetching;
+                sum[4] += progress.pagesParsing;
+                sum[5] += progress.pagesCounting;
+                sum[6] += progress.linksDropped;
+                sum[7] += progress.wordsCounted;
+                sum[8] += progress.distinctWords;
+            }
+            if (!outboxes.containsKey(root) || completion.isDone()) {
+                return;
+            }
+            remoteProgress.put(root, new CrawlProgress(sum[0], sum[1], sum[2], sum[3], sum[4], sum[5], sum[6],
+                    sum[7], sum[8]));
+            if (truncated) {
+                remoteTruncated.add(root);
+            }
+            boolean quiet = idle && sent == received;
+            if (quiet && previousQuiet && sent == previousSent && received == previousReceived) {
+                completion.complete(null);
+            }
+            previousQuiet = quiet;
+            previousSent = sent;
+            previousReceived = received;
+        }
+    }
+}
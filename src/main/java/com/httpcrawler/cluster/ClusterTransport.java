@@ -0,0 +1,23 @@
+package com.httpcrawler.cluster;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Carries {@link ClusterMessage}s between the nodes of a cluster, which are numbered by their position in the
+ * node list. Every request is answered by exactly one reply; a request the handler throws on fails the
+ * returned future on the sending node.
+ */
+@ParametersAreNonnullByDefault
+public interface ClusterTransport extends Closeable {
+
+    void start(Function<ClusterMessage, ClusterMessage> handler) throws IOException;
+
+    CompletableFuture<ClusterMessage> send(int node, ClusterMessage message);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,94 @@
+package com.httpcrawler.cluster;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Connects nodes that run in the same JVM, each under its own Spring context, by their address in the node
+ * list. Messages still go through their binary encoding, so a cluster of in-process nodes exercises the same
+ * code paths as one over TCP.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class InProcessTransport implements ClusterTransport {
+    private static final Logger LOGGER = LoggerFactory.getLogger(InProcessTransport.class);
+
+    private static final ConcurrentMap<String, InProcessTransport> NODES = new ConcurrentHashMap<>();
+
+    private final List<String> addresses;
+    private final String address;
+    private final ExecutorService executorService;
+    @Nullable
+    private volatile Function<ClusterMessage, ClusterMessage> handler;
+
+    public InProcessTransport(List<String> addresses, int nodeId, int threadCount) {
+        this.addresses = addresses;
+        this.address = addresses.get(nodeId);
+        this.executorService = Executors.newFixedThreadPool(
+                threadCount,
+                new ThreadFactoryBuilder()
+                        .setNameFormat(getClass().getSimpleName() + "-" + nodeId + "-%d")
+                        .setPriority(Thread.NORM_PRIORITY)
+                        .setUncaughtExceptionHandler((t, e) -> LOGGER.error(e.getMessage(), e))
+                        .setDaemon(true)
+                        .build()
+        );
+    }
+
+    @Override
+    public void start(Function<ClusterMessage, ClusterMessage> handler) throws IOException {
+        this.handler = handler;
+        if (NODES.putIfAbsent(address, this) != null) {
+            throw new IOException("Cluster node " + address + " is already running in this JVM");
+        }
+    }
+
+    @Override
+    public CompletableFuture<ClusterMessage> send(int node, ClusterMessage message) {
+        InProcessTransport target = NODES.get(addresses.get(node));
+        if (target == null) {
+            CompletableFuture<ClusterMessage> unreachable = new CompletableFuture<>();
+            unreachable.completeExceptionally(new ConnectException("Cluster node " + addresses.get(node)
+                    + " is not running in this JVM"));
+            return unreachable;
+        }
+        byte[] request = message.encode();
+        return CompletableFuture.supplyAsync(() -> target.handle(request), target.executorService)
+                .thenApply(reply -> {
+                    try {
+                        return ClusterMessage.decode(reply);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    @Override
+    public void close() {
+        NODES.remove(address, this);
+        executorService.shutdownNow();
+    }
+
+    private byte[] handle(byte[] request) {
+        try {
+            return handler.apply(ClusterMessage.decode(request)).encode();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.httpcrawler.cluster;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Links of one crawl waiting to be sent to the nodes that own them, and the counters the termination check
+ * compares: a link counts as sent when it is buffered here and as received once its owner has queued it.
+ * A batch is full at {@code batchSize} links or {@link ClusterMessage#MAX_LINKS_BYTES}, whichever comes first.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+class LinkOutbox {
+
+    private final Batch[] batches;
+    private final int batchSize;
+    private final AtomicLong sent;
+    private final AtomicLong received;
+    private volatile boolean truncated;
+
+    LinkOutbox(int nodeCount, int batchSize) {
+        this.batches = new Batch[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            batches[i] = new Batch(batchSize);
+        }
+        this.batchSize = batchSize;
+        this.sent = new AtomicLong();
+        this.received = new AtomicLong();
+    }
+
+    /**
+     * @return a full batch to send, or {@code null} if the link was only buffered
+     */
+    @Nullable
+    Batch add(int node, String url, int depth) {
+        sent.incrementAndGet();
+        Batch batch = batches[node];
+        synchronized (batch) {
+            batch.add(url, depth);
+            return batch.urls.size() >= batchSize || batch.bytes >= ClusterMessage.MAX_LINKS_BYTES
+                    ? batch.take()
+                    : null;
+        }
+    }
+
+    @Nullable
+    Batch drain(int node) {
+        Batch batch = batches[node];
+        synchronized (batch) {
+            return batch.urls.isEmpty() ? null : batch.take();
+        }
+    }
+
+    /**
+     * Takes back links that never reached their owner, so that the sent and received counts can match again,
+     * and marks the crawl truncated for missing them.
+     */
+    void lost(int count) {
+        truncated = true;
+        sent.addAndGet(-count);
+    }
+
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    void received(int count) {
+        received.addAndGet(count);
+    }
+
+    long sent() {
+        return sent.get();
+    }
+
+    long received() {
+        return received.get();
+    }
+
+    @ParametersAreNonnullByDefault
+    static class Batch {
+        final List<String> urls;
+        int[] depths;
+        private long bytes;
+
+        Batch(int capacity) {
+            this.urls = new ArrayList<>(capacity);
+            this.depths = new int[capacity];
+        }
+
+        private void add(String url, int depth) {
+            if (urls.size() == depths.length) {
+                depths = Arrays.copyOf(depths, Math.max(8, depths.length * 2));
+            }
+            depths[urls.size()] = depth;
+            urls.add(url);
+            bytes += ClusterMessage.linkBytes(url);
+        }
+
+        private Batch take() {
+            Batch full = new Batch(0);
+            full.urls.addAll(urls);
+            full.depths = Arrays.copyOf(depths, urls.size());
+            urls.clear();
+            bytes = 0;
+            return full;
+        }
+    }
+}
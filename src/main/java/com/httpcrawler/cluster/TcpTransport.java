@@ -0,0 +1,295 @@
+package com.httpcrawler.cluster;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Sends messages as length-prefixed frames over one TCP connection per peer, opened on first use and
+ * reopened after a failure. Replies are matched to requests by id, so a connection carries any number of
+ * outstanding requests. Incoming requests are handled on a pool of {@code threadCount} threads.
+ * <p>
+ * Frames are not authenticated. The listener binds to this node's own entry in {@code cluster.nodes}, which
+ * should be an address on the cluster's private network; frames larger than any message a node sends are
+ * refused.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class TcpTransport implements ClusterTransport {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TcpTransport.class);
+
+    private static final int MAX_FRAME_BYTES = ClusterMessage.MAX_ENCODED_BYTES;
+    private static final byte REQUEST = 0;
+    private static final byte REPLY = 1;
+    private static final byte ERROR = 2;
+
+    private final List<InetSocketAddress> addresses;
+    private final int nodeId;
+    private final int connectTimeoutMillis;
+    private final ConcurrentMap<Integer, Connection> connections;
+    private final AtomicLong nextId;
+    private final ExecutorService ioExecutor;
+    private final ExecutorService handlerExecutor;
+    @Nullable
+    private volatile ServerSocket serverSocket;
+    @Nullable
+    private volatile Function<ClusterMessage, ClusterMessage> handler;
+
+    public TcpTransport(List<InetSocketAddress> addresses, int nodeId, int threadCount, int connectTimeoutMillis) {
+        this.addresses = addresses;
+        this.nodeId = nodeId;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.connections = new ConcurrentHashMap<>();
+        this.nextId = new AtomicLong();
+        this.ioExecutor = Executors.newCachedThreadPool(threadFactory("Io"));
+        this.handlerExecutor = Executors.newFixedThreadPool(threadCount, threadFactory("Handler"));
+    }
+
+    @Override
+    public void start(Function<ClusterMessage, ClusterMessage> handler) throws IOException {
+        this.handler = handler;
+        ServerSocket server = new ServerSocket();
+        server.setReuseAddress(true);
+        InetSocketAddress address = addresses.get(nodeId);
+        server.bind(address);
+        this.serverSocket = server;
+        ioExecutor.execute(() -> accept(server));
+        LOGGER.info("Cluster node {} listening on {}", nodeId, server.getLocalSocketAddress());
+        if (address.getAddress() == null || address.getAddress().isAnyLocalAddress()) {
+            LOGGER.warn("Cluster node {} accepts unauthenticated frames on every interface", nodeId);
+        }
+    }
+
+    @Override
+    public CompletableFuture<ClusterMessage> send(int node, ClusterMessage message) {
+        CompletableFuture<ClusterMessage> reply = new CompletableFuture<>();
+        byte[] payload = message.encode();
+        if (payload.length > MAX_FRAME_BYTES) {
+            reply.completeExceptionally(frameTooLarge(payload));
+            return reply;
+        }
+        long id = nextId.incrementAndGet();
+        Connection connection = null;
+        try {
+            connection = connection(node);
+            Connection registered = connection;
+            registered.pending.put(id, reply);
+            reply.whenComplete((ignored, e) -> registered.pending.remove(id));
+            connection.write(id, REQUEST, payload);
+        } catch (IOException e) {
+            if (connection != null) {
+                connections.remove(node, connection);
+                connection.close();
+            }
+            reply.completeExceptionally(e);
+        }
+        return reply;
+    }
+
+    @Override
+    public void close() {
+        ServerSocket server = serverSocket;
+        if (server != null) {
+            try {
+                server.close();
+            } catch (IOException e) {
+                LOGGER.debug("", e);
+            }
+        }
+        for (Connection connection : connections.values()) {
+            connection.close();
+            connection.failPending(new SocketException("Transport closed"));
+        }
+        connections.clear();
+        ioExecutor.shutdownNow();
+        handlerExecutor.shutdownNow();
+    }
+
+    private Connection connection(int node) throws IOException {
+        Connection connection = connections.get(node);
+        if (connection != null) {
+            return connection;
+        }
+        synchronized (connections) {
+            connection = connections.get(node);
+            if (connection == null) {
+                Socket socket = new Socket();
+                socket.connect(addresses.get(node), connectTimeoutMillis);
+                connection = new Connection(socket);
+                connections.put(node, connection);
+                Connection opened = connection;
+                ioExecutor.execute(() -> readReplies(node, opened));
+            }
+            return connection;
+        }
+    }
+
+    private void accept(ServerSocket server) {
+        while (!server.isClosed()) {
+            try {
+                Connection connection = new Connection(server.accept());
+                ioExecutor.execute(() -> readRequests(connection));
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    LOGGER.warn("Cannot accept cluster connection", e);
+                }
+            }
+        }
+    }
+
+    private void readRequests(Connection connection) {
+        try {
+            while (true) {
+                long id = connection.in.readLong();
+                byte kind = connection.in.readByte();
+                byte[] payload = connection.readPayload();
+                if (kind != REQUEST) {
+                    throw new IOException("Unexpected frame kind " + kind);
+                }
+                handlerExecutor.execute(() -> handle(connection, id, payload));
+            }
+        } catch (EOFException e) {
+            LOGGER.debug("Cluster connection closed by peer");
+        } catch (IOException e) {
+            LOGGER.debug("Cluster connection failed", e);
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void handle(Connection connection, long id, byte[] payload) {
+        byte kind;
+        byte[] reply;
+        try {
+            reply = handler.apply(ClusterMessage.decode(payload)).encode();
+            if (reply.length > MAX_FRAME_BYTES) {
+                throw frameTooLarge(reply);
+            }
+            kind = REPLY;
+        } catch (Exception e) {
+            LOGGER.warn("Cannot handle cluster request", e);
+            reply = String.valueOf(e).getBytes(StandardCharsets.UTF_8);
+            kind = ERROR;
+        }
+        try {
+            connection.write(id, kind, reply);
+        } catch (IOException e) {
+            LOGGER.debug("Cannot reply to cluster request", e);
+            connection.close();
+        }
+    }
+
+    private void readReplies(int node, Connection connection) {
+        IOException failure;
+        try {
+            while (true) {
+                long id = connection.in.readLong();
+                byte kind = connection.in.readByte();
+                byte[] payload = connection.readPayload();
+                CompletableFuture<ClusterMessage> reply = connection.pending.get(id);
+                if (reply == null) {
+                    continue;
+                }
+                if (kind == ERROR) {
+                    reply.completeExceptionally(new IOException("Cluster node " + node + " failed: "
+                            + new String(payload, StandardCharsets.UTF_8)));
+                } else {
+                    reply.complete(ClusterMessage.decode(payload));
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+        connections.remove(node, connection);
+        connection.close();
+        connection.failPending(failure);
+    }
+
+    private static IOException frameTooLarge(byte[] payload) {
+        return new IOException("Cluster frame of " + payload.length + " bytes exceeds " + MAX_FRAME_BYTES);
+    }
+
+    private ThreadFactory threadFactory(String kind) {
+        return new ThreadFactoryBuilder()
+                .setNameFormat(getClass().getSimpleName() + "-" + kind + "-%d")
+                .setPriority(Thread.NORM_PRIORITY)
+                .setUncaughtExceptionHandler((t, e) -> LOGGER.error(e.getMessage(), e))
+                .setDaemon(true)
+                .build();
+    }
+
+    @ThreadSafe
+    private static class Connection implements Closeable {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final ConcurrentMap<Long, CompletableFuture<ClusterMessage>> pending;
+
+        Connection(Socket socket) throws IOException {
+            socket.setTcpNoDelay(true);
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            this.pending = new ConcurrentHashMap<>();
+        }
+
+        synchronized void write(long id, byte kind, byte[] payload) throws IOException {
+            out.writeLong(id);
+            out.writeByte(kind);
+            out.writeInt(payload.length);
+            out.write(payload);
+            out.flush();
+        }
+
+        byte[] readPayload() throws IOException {
+            int length = in.readInt();
+            if (length < 0 || length > MAX_FRAME_BYTES) {
+                throw new IOException("Cluster frame of " + length + " bytes");
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            return payload;
+        }
+
+        /**
+         * Fails the requests sent on this connection, which can no longer be answered.
+         */
+        void failPending(Exception e) {
+            pending.values().forEach(reply -> reply.completeExceptionally(e));
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LOGGER.debug("", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.httpcrawler.controller;
+
+import com.httpcrawler.data.CrawlJob;
+import com.httpcrawler.dto.CrawlJobResponse;
+import com.httpcrawler.dto.CrawlTopWordsResponse;
+import com.httpcrawler.service.TopWordFrequencyService;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
+
+@RestController
+@RequestMapping("/crawls")
+@ParametersAreNonnullByDefault
+public class CrawlController {
+
+    private final TopWordFrequencyService topWordFrequencyService;
+
+    public CrawlController(TopWordFrequencyService topWordFrequencyService) {
+        this.topWordFrequencyService = topWordFrequencyService;
+    }
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public CrawlJobResponse startCrawl(
+            @NotBlank(message = "urlString must be not blank")
+            @RequestParam("urlString")
+                    String urlString,
+            @NotNull(message = "depth must be not null")
+            @Positive(message = "depth must be positive")
+            @RequestParam("depth")
+                    Integer depth,
+            @RequestParam(value = "mode", defaultValue = CrawlRequests.EXACT_MODE)
+                    String mode,
+            @Nullable
+            @RequestParam(value = "epsilon", required = false)
+                    Double epsilon,
+            @Nullable
+            @RequestParam(value = "delta", required = false)
+                    Double delta,
+            @Nullable
+            @RequestParam(value = "maxPages", required = false)
+                    Long maxPages,
+            @Nullable
+            @RequestParam(value = "maxBytes", required = false)
+                    Long maxBytes,
+            @Nullable
+            @RequestParam(value = "deadlineMillis", required = false)
+                    Long deadlineMillis,
+            @RequestParam(value = "offline", defaultValue = "false")
+                    boolean offline
+    ) {
+        CrawlJob job = topWordFrequencyService.startCrawl(
+                urlString,
+                CrawlRequests.depth(depth),
+                CrawlRequests.countingOptions(mode, epsilon, delta),
+                CrawlRequests.budget(maxPages, maxBytes, deadlineMillis),
+                offline
+        );
+        return new CrawlJobResponse(job, topWordFrequencyService.getProgress(job),
+                topWordFrequencyService.getMemoryUsage(job));
+    }
+
+    @GetMapping("/{id}")
+    public CrawlJobResponse getCrawl(@PathVariable("id") String id) {
+        CrawlJob job = getJob(id);
+        return new CrawlJobResponse(job, topWordFrequencyService.getProgress(job),
+                topWordFrequencyService.getMemoryUsage(job));
+    }
+
+    @GetMapping("/{id}/top-words")
+    public CrawlTopWordsResponse getTopWords(@PathVariable("id") String id) {
+        CrawlJob job = getJob(id);
+        return new CrawlTopWordsResponse(job, topWordFrequencyService.getTopWords(job));
+    }
+
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void cancelCrawl(@PathVariable("id") String id) {
+        if (!topWordFrequencyService.cancel(id)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Crawl " + id + " not found");
+        }
+    }
+
+    private CrawlJob getJob(String id) {
+        CrawlJob job = topWordFrequencyService.getJob(id);
+        if (job == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Crawl " + id + " not found");
+        }
+        return job;
+    }
+}
@@ -0,0 +1,26 @@
+package com.httpcrawler.controller;
+
+import com.httpcrawler.service.CrawlRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Answers a crawl that the memory governor turned away with {@code 429 Too Many Requests} and a
+ * {@code Retry-After} header.
+ */
+@RestControllerAdvice
+@ParametersAreNonnullByDefault
+public class CrawlRejectedHandler {
+
+    @ExceptionHandler(CrawlRejectedException.class)
+    public void crawlRejected(CrawlRejectedException e, HttpServletResponse response) throws IOException {
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(e.retryAfterSeconds));
+        response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), e.getMessage());
+    }
+}
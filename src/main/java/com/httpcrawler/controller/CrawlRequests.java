@@ -0,0 +1,96 @@
+package com.httpcrawler.controller;
+
+import com.httpcrawler.data.CountMinSketch;
+import com.httpcrawler.data.CountingOptions;
+import com.httpcrawler.data.CrawlBudget;
+import com.httpcrawler.data.CrawlSeed;
+import com.httpcrawler.dto.BatchRootRequest;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.validation.ValidationException;
+import java.util.ArrayList;
+import java.util.List;
+
+@ParametersAreNonnullByDefault
+final class CrawlRequests {
+
+    static final String EXACT_MODE = "exact";
+    static final String APPROXIMATE_MODE = "approx";
+
+    private static final double MIN_EPSILON = 0.00001;
+    private static final double MAX_EPSILON = 0.5;
+    private static final double MIN_DELTA = 1e-9;
+    private static final int MAX_DEPTH = 1_000;
+
+    private CrawlRequests() {
+    }
+
+    static int depth(@Nullable Integer depth) {
+        if (depth == null || depth <= 0) {
+            throw new ValidationException("depth must be positive");
+        }
+        if (depth > MAX_DEPTH) {
+            throw new ValidationException("depth must be at most " + MAX_DEPTH);
+        }
+        return depth;
+    }
+
+    static List<CrawlSeed> seeds(@Nullable List<BatchRootRequest> roots) {
+        if (roots == null || roots.isEmpty()) {
+            throw new ValidationException("roots must be not empty");
+        }
+        List<CrawlSeed> seeds = new ArrayList<>(roots.size());
+        for (BatchRootRequest root : roots) {
+            if (root == null || root.urlString == null || root.urlString.trim().isEmpty()) {
+                throw new ValidationException("urlString must be not blank");
+            }
+            seeds.add(new CrawlSeed(root.urlString, depth(root.depth)));
+        }
+        return seeds;
+    }
+
+    static CrawlBudget budget(@Nullable Long maxPages, @Nullable Long maxBytes, @Nullable Long deadlineMillis) {
+        return CrawlBudget.of(
+                positiveOrUnlimited(maxPages, "maxPages"),
+                positiveOrUnlimited(maxBytes, "maxBytes"),
+                positiveOrUnlimited(deadlineMillis, "deadlineMillis")
+        );
+    }
+
+    static CountingOptions countingOptions(String mode, @Nullable Double epsilon, @Nullable Double delta) {
+        if (EXACT_MODE.equalsIgnoreCase(mode)) {
+            return CountingOptions.EXACT;
+        }
+        if (!APPROXIMATE_MODE.equalsIgnoreCase(mode)) {
+            throw new ValidationException("mode must be one of: " + EXACT_MODE + ", " + APPROXIMATE_MODE);
+        }
+        if (epsilon == null) {
+            epsilon = CountingOptions.DEFAULT_EPSILON;
+        }
+        if (delta == null) {
+            delta = CountingOptions.DEFAULT_DELTA;
+        }
+        if (epsilon < MIN_EPSILON || epsilon > MAX_EPSILON) {
+            throw new ValidationException("epsilon must be between " + MIN_EPSILON + " and " + MAX_EPSILON);
+        }
+        if (delta < MIN_DELTA || delta >= 1) {
+            throw new ValidationException("delta must be at least " + MIN_DELTA + " and below 1");
+        }
+        if (CountMinSketch.counters(epsilon, delta) > CountMinSketch.MAX_COUNTERS) {
+            throw new ValidationException("epsilon and delta need a sketch of more than "
+                    + CountMinSketch.MAX_COUNTERS + " counters, raise either of them");
+        }
+        return CountingOptions.approximate(epsilon, delta);
+    }
+
+    private static long positiveOrUnlimited(@Nullable Long limit, String name) {
+        if (limit == null) {
+            return 0;
+        }
+        if (limit <= 0) {
+            throw new ValidationException(name + " must be positive");
+        }
+        return limit;
+    }
+}
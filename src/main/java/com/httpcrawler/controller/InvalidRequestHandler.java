@@ -0,0 +1,23 @@
+package com.httpcrawler.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.ValidationException;
+import java.io.IOException;
+
+/**
+ * Answers a request whose parameters failed validation with {@code 400 Bad Request}.
+ */
+@RestControllerAdvice
+@ParametersAreNonnullByDefault
+public class InvalidRequestHandler {
+
+    @ExceptionHandler(ValidationException.class)
+    public void invalidRequest(ValidationException e, HttpServletResponse response) throws IOException {
+        response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+    }
+}
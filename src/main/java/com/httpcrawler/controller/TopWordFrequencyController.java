@@ -1,19 +1,23 @@
 package com.httpcrawler.controller;
 
+import com.httpcrawler.data.BatchTopWords;
+import com.httpcrawler.data.TopWords;
+import com.httpcrawler.dto.BatchRootRequest;
+import com.httpcrawler.dto.BatchTopWordsResponse;
 import com.httpcrawler.dto.TopWordsResponse;
 import com.httpcrawler.service.TopWordFrequencyService;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
-import javax.validation.ValidationException;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Positive;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.util.Map;
+import java.util.List;
 
 @RestController
 @ParametersAreNonnullByDefault
@@ -33,17 +37,57 @@ public class TopWordFrequencyController {
             @NotNull(message = "depth must be not null")
             @Positive(message = "depth must be positive")
             @RequestParam("depth")
-                    Integer depth
+                    Integer depth,
+            @RequestParam(value = "mode", defaultValue = CrawlRequests.EXACT_MODE)
+                    String mode,
+            @Nullable
+            @RequestParam(value = "epsilon", required = false)
+                    Double epsilon,
+            @Nullable
+            @RequestParam(value = "delta", required = false)
+                    Double delta,
+            @Nullable
+            @RequestParam(value = "maxPages", required = false)
+                    Long maxPages,
+            @Nullable
+            @RequestParam(value = "maxBytes", required = false)
+                    Long maxBytes,
+            @Nullable
+            @RequestParam(value = "deadlineMillis", required = false)
+                    Long deadlineMillis,
+            @RequestParam(value = "offline", defaultValue = "false")
+                    boolean offline
     ) {
-        try {
-            URL url = new URL(urlString);
-        } catch (MalformedURLException e) {
-            throw new ValidationException("urlString must be url");
-        }
-        if (urlString.endsWith("/")) {
-            urlString = urlString.substring(0, urlString.length() - 1);
-        }
-        Map<String, Long> result = topWordFrequencyService.getTopWordsFrequency(urlString, depth);
+        TopWords result = topWordFrequencyService.getTopWordsFrequency(
+                urlString,
+                CrawlRequests.depth(depth),
+                CrawlRequests.countingOptions(mode, epsilon, delta),
+                CrawlRequests.budget(maxPages, maxBytes, deadlineMillis),
+                offline
+        );
         return new TopWordsResponse(result);
     }
+
+    @PostMapping("/top-words/batch")
+    public BatchTopWordsResponse getBatchTopWordsFrequency(
+            @RequestBody
+                    List<BatchRootRequest> roots,
+            @RequestParam(value = "mode", defaultValue = CrawlRequests.EXACT_MODE)
+                    String mode,
+            @Nullable
+            @RequestParam(value = "epsilon", required = false)
+                    Double epsilon,
+            @Nullable
+            @RequestParam(value = "delta", required = false)
+                    Double delta,
+            @RequestParam(value = "offline", defaultValue = "false")
+                    boolean offline
+    ) {
+        BatchTopWords result = topWordFrequencyService.getBatchTopWordsFrequency(
+                CrawlRequests.seeds(roots),
+                CrawlRequests.countingOptions(mode, epsilon, delta),
+                offline
+        );
+        return new BatchTopWordsResponse(result);
+    }
 }
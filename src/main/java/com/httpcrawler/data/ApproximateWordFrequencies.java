@@ -0,0 +1,87 @@
+package com.httpcrawler.data;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjLongConsumer;
+
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class ApproximateWordFrequencies implements WordCounter {
+
+    private static final int CANDIDATES_PER_TOP_WORD = 4;
+
+    private final CountMinSketch sketch;
+    private final HeavyHitters heavyHitters;
+    private final LongAdder totalWords;
+
+    public ApproximateWordFrequencies(double epsilon, double delta, int topCount) {
+        this.sketch = new CountMinSketch(epsilon, delta);
+        this.heavyHitters = new HeavyHitters(Math.max(topCount, 1) * CANDIDATES_PER_TOP_WORD);
+        this.totalWords = new LongAdder();
+    }
+
+    @Override
+    public void addAll(WordCountTable page) {
+        int size = page.size();
+        if (size == 0) {
+            return;
+        }
+        String[] words = new String[size];
+        long[] estimates = new long[size];
+        int[] index = new int[1];
+        long[] total = new long[1];
+        page.forEach((word, count) -> {
+            words[index[0]] = word;
+            estimates[index[0]++] = sketch.add(word, count);
+            total[0] += count;
+        });
+        totalWords.add(total[0]);
+        synchronized (heavyHitters) {
+            for (int i = 0; i < size; i++) {
+                heavyHitters.offer(words[i], estimates[i]);
+            }
+        }
+    }
+
+    @Override
+    public void forEach(ObjLongConsumer<String> consumer) {
+        synchronized (heavyHitters) {
+            heavyHitters.forEach(consumer);
+        }
+    }
+
+    @Override
+    public int shardCount() {
+        return 1;
+    }
+
+    @Override
+    public void forEach(int shard, ObjLongConsumer<String> consumer) {
+        forEach(consumer);
+    }
+
+    @Override
+    public long size() {
+        synchronized (heavyHitters) {
+            return heavyHitters.size();
+        }
+    }
+
+    @Override
+    public long totalWords() {
+        return totalWords.sum();
+    }
+
+    @Override
+    public long memoryBytes() {
+        synchronized (heavyHitters) {
+            return sketch.memoryBytes() + heavyHitters.memoryBytes();
+        }
+    }
+
+    @Override
+    public ErrorBounds errorBounds() {
+        return new ErrorBounds(sketch.epsilon(), sketch.delta(), (long) Math.ceil(sketch.epsilon() * totalWords()));
+    }
+}
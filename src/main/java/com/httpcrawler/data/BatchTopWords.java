@@ -0,0 +1,27 @@
+package com.httpcrawler.data;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+import java.util.Collections;
+import java.util.List;
+
+@Immutable
+@ParametersAreNonnullByDefault
+public class BatchTopWords {
+
+    public final List<CrawlSeed> seeds;
+    /**
+     * Top words of the pages each seed reached, in the order of {@link #seeds}.
+     */
+    public final List<TopWords> seedTopWords;
+    /**
+     * Top words of every page of the batch, each counted once however many seeds reached it.
+     */
+    public final TopWords combined;
+
+    public BatchTopWords(List<CrawlSeed> seeds, List<TopWords> seedTopWords, TopWords combined) {
+        this.seeds = Collections.unmodifiableList(seeds);
+        this.seedTopWords = Collections.unmodifiableList(seedTopWords);
+        this.combined = combined;
+    }
+}
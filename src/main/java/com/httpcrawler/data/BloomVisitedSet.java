@@ -0,0 +1,71 @@
+package com.httpcrawler.data;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size Bloom filter over URL fingerprints. Memory does not grow with the crawl, but a false positive
+ * makes an unseen URL look visited, so it is skipped. The rate stays near {@code falsePositiveRate} until
+ * {@code expectedUrls} URLs have been added.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class BloomVisitedSet implements VisitedSet {
+
+    private final long bitCount;
+    private final int hashCount;
+    private final AtomicLongArray bits;
+    private final LongAdder size;
+
+    public BloomVisitedSet(long expectedUrls, double falsePositiveRate) {
+        if (expectedUrls <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException(
+                    "Invalid bloom filter parameters: " + expectedUrls + ", " + falsePositiveRate);
+        }
+        long optimalBits = (long) Math.ceil(-expectedUrls * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min((optimalBits + 63) / 64, Integer.MAX_VALUE - 8);
+        this.bitCount = words * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedUrls * Math.log(2)));
+        this.bits = new AtomicLongArray(words);
+        this.size = new LongAdder();
+    }
+
+    @Override
+    public boolean add(long fingerprint) {
+        int h1 = (int) fingerprint;
+        int h2 = (int) (fingerprint >>> 32);
+        boolean added = false;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitCount;
+            added |= setBit((int) (bit >>> 6), 1L << bit);
+        }
+        if (added) {
+            size.increment();
+        }
+        return added;
+    }
+
+    @Override
+    public long size() {
+        return size.sum();
+    }
+
+    @Override
+    public long memoryBytes() {
+        return (long) bits.length() * Long.BYTES;
+    }
+
+    private boolean setBit(int word, long mask) {
+        while (true) {
+            long current = bits.get(word);
+            if ((current & mask) != 0) {
+                return false;
+            }
+            if (bits.compareAndSet(word, current, current | mask)) {
+                return true;
+            }
+        }
+    }
+}
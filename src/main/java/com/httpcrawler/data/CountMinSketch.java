@@ -0,0 +1,101 @@
+package com.httpcrawler.data;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-Min Sketch: every estimate is at least the true count and, with probability {@code 1 - delta},
+ * exceeds it by at most {@code epsilon} times the total of all counts.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class CountMinSketch {
+
+    /**
+     * Largest number of counters a sketch may allocate, 32 MB worth.
+     */
+    public static final long MAX_COUNTERS = 1L << 22;
+
+    private final int width;
+    private final int depth;
+    private final AtomicLongArray counters;
+
+    public CountMinSketch(double epsilon, double delta) {
+        if (epsilon <= 0 || epsilon >= 1 || delta <= 0 || delta >= 1) {
+            throw new IllegalArgumentException("epsilon and delta must be in (0, 1): " + epsilon + ", " + delta);
+        }
+        if (counters(epsilon, delta) > MAX_COUNTERS) {
+            throw new IllegalArgumentException("Sketch for " + epsilon + ", " + delta + " exceeds " + MAX_COUNTERS
+                    + " counters");
+        }
+        this.width = width(epsilon);
+        this.depth = depth(delta);
+        this.counters = new AtomicLongArray(width * depth);
+    }
+
+    /**
+     * @return the number of counters a sketch for {@code epsilon} and {@code delta} allocates
+     */
+    public static long counters(double epsilon, double delta) {
+        return (long) width(epsilon) * depth(delta);
+    }
+
+    public long memoryBytes() {
+        return (long) counters.length() * Long.BYTES;
+    }
+
+    public long add(String word, long count) {
+        long hash = hash(word);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            long value = counters.addAndGet(row * width + index(h1, h2, row), count);
+            estimate = Math.min(estimate, value);
+        }
+        return estimate;
+    }
+
+    public long estimate(String word) {
+        long hash = hash(word);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(row * width + index(h1, h2, row)));
+        }
+        return estimate;
+    }
+
+    public double epsilon() {
+        return Math.E / width;
+    }
+
+    public double delta() {
+        return Math.exp(-depth);
+    }
+
+    private int index(int h1, int h2, int row) {
+        return ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+    }
+
+    private static long hash(String word) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < word.length(); i++) {
+            hash = (hash ^ word.charAt(i)) * 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return hash | 1L << 32;
+    }
+
+    private static int width(double epsilon) {
+        return (int) Math.min(Math.ceil(Math.E / epsilon), Integer.MAX_VALUE);
+    }
+
+    private static int depth(double delta) {
+        return (int) Math.min(Math.ceil(Math.log(1 / delta)), Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,6 @@
+package com.httpcrawler.data;
+
+public enum CountingMode {
+    EXACT,
+    APPROXIMATE
+}
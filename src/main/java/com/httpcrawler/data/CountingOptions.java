@@ -0,0 +1,49 @@
+package com.httpcrawler.data;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+import java.util.Objects;
+
+@Immutable
+@ParametersAreNonnullByDefault
+public class CountingOptions {
+
+    public static final double DEFAULT_EPSILON = 0.0001;
+    public static final double DEFAULT_DELTA = 0.01;
+
+    public static final CountingOptions EXACT = new CountingOptions(CountingMode.EXACT, 0, 0);
+
+    public final CountingMode mode;
+    public final double epsilon;
+    public final double delta;
+
+    private CountingOptions(CountingMode mode, double epsilon, double delta) {
+        this.mode = mode;
+        this.epsilon = epsilon;
+        this.delta = delta;
+    }
+
+    public static CountingOptions approximate(double epsilon, double delta) {
+        return new CountingOptions(CountingMode.APPROXIMATE, epsilon, delta);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (obj == null || obj.getClass() != this.getClass()) {
+            return false;
+        }
+        CountingOptions other = (CountingOptions) obj;
+
+        return this.mode == other.mode
+                && Double.compare(this.epsilon, other.epsilon) == 0
+                && Double.compare(this.delta, other.delta) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mode, epsilon, delta);
+    }
+}
@@ -0,0 +1,69 @@
+package com.httpcrawler.data;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What is left of the page and byte limits of a {@link CrawlBudget} while its crawl runs. A crawl is
+ * truncated once the budget has turned away a page or link, not merely when it is used up.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class CrawlAllowance {
+
+    private final CrawlBudget budget;
+    private final AtomicLong pages;
+    private final AtomicLong bytes;
+    private volatile boolean truncated;
+
+    public CrawlAllowance(CrawlBudget budget) {
+        this.budget = budget;
+        this.pages = new AtomicLong();
+        this.bytes = new AtomicLong();
+    }
+
+    /**
+     * @return {@code false} if the budget has no room for another page
+     */
+    public boolean tryStartPage() {
+        if (isUsedUp() || (budget.maxPages > 0 && pages.incrementAndGet() > budget.maxPages)) {
+            truncated = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code false} if the budget is used up, so new links are no longer worth queueing
+     */
+    public boolean canQueue() {
+        if (isUsedUp()) {
+            truncated = true;
+            return false;
+        }
+        return true;
+    }
+
+    public void addBytes(long count) {
+        if (budget.maxBytes > 0) {
+            bytes.addAndGet(count);
+        }
+    }
+
+    /**
+     * Marks the crawl truncated for turning away links for a reason other than its budget.
+     */
+    public void truncate() {
+        truncated = true;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    private boolean isUsedUp() {
+        return (budget.maxPages > 0 && pages.get() >= budget.maxPages)
+                || (budget.maxBytes > 0 && bytes.get() >= budget.maxBytes);
+    }
+}
@@ -0,0 +1,56 @@
+package com.httpcrawler.data;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+import java.util.Objects;
+
+/**
+ * Limits of one crawl; zero means no limit. Pages are counted when they are fetched, bytes as page content
+ * arrives, and the deadline runs from the start of the crawl.
+ */
+@Immutable
+@ParametersAreNonnullByDefault
+public class CrawlBudget {
+
+    public static final CrawlBudget UNLIMITED = new CrawlBudget(0, 0, 0);
+
+    public final long maxPages;
+    public final long maxBytes;
+    public final long deadlineMillis;
+
+    private CrawlBudget(long maxPages, long maxBytes, long deadlineMillis) {
+        this.maxPages = maxPages;
+        this.maxBytes = maxBytes;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    public static CrawlBudget of(long maxPages, long maxBytes, long deadlineMillis) {
+        return maxPages == 0 && maxBytes == 0 && deadlineMillis == 0
+                ? UNLIMITED
+                : new CrawlBudget(maxPages, maxBytes, deadlineMillis);
+    }
+
+    public boolean hasPageOrByteLimit() {
+        return maxPages > 0 || maxBytes > 0;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (obj == null || obj.getClass() != this.getClass()) {
+            return false;
+        }
+        CrawlBudget other = (CrawlBudget) obj;
+
+        return this.maxPages == other.maxPages
+                && this.maxBytes == other.maxBytes
+                && this.deadlineMillis == other.deadlineMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(maxPages, maxBytes, deadlineMillis);
+    }
+}
@@ -0,0 +1,74 @@
+package com.httpcrawler.data;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.CompletableFuture;
+
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class CrawlJob {
+
+    public final String id;
+    public final Root root;
+    public final CountingOptions options;
+    public final CrawlBudget budget;
+    public final boolean offline;
+    public final long startedAtMillis;
+
+    private final CompletableFuture<CrawlStatus> completion;
+
+    private CrawlStatus status;
+    private long finishedAtMillis;
+    @Nullable
+    private TopWords result;
+    @Nullable
+    private CrawlProgress progress;
+
+    public CrawlJob(String id, Root root, CountingOptions options, CrawlBudget budget, boolean offline,
+                    long startedAtMillis) {
+        this.id = id;
+        this.root = root;
+        this.options = options;
+        this.budget = budget;
+        this.offline = offline;
+        this.startedAtMillis = startedAtMillis;
+        this.status = CrawlStatus.RUNNING;
+        this.completion = new CompletableFuture<>();
+    }
+
+    public CompletableFuture<CrawlStatus> completion() {
+        return completion;
+    }
+
+    public synchronized CrawlStatus status() {
+        return status;
+    }
+
+    public synchronized long finishedAtMillis() {
+        return finishedAtMillis;
+    }
+
+    @Nullable
+    public synchronized TopWords result() {
+        return result;
+    }
+
+    @Nullable
+    public synchronized CrawlProgress progress() {
+        return progress;
+    }
+
+    public synchronized boolean finish(CrawlStatus status, @Nullable TopWords result, CrawlProgress progress,
+                                       long finishedAtMillis) {
+        if (this.status != CrawlStatus.RUNNING) {
+            return false;
+        }
+        this.status = status;
+        this.result = result;
+        this.progress = progress;
+        this.finishedAtMillis = finishedAtMillis;
+        completion.complete(status);
+        return true;
+    }
+}
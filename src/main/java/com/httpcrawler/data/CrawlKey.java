@@ -0,0 +1,55 @@
+package com.httpcrawler.data;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+import java.util.Objects;
+
+/**
+ * Identifies the result of a crawl. The URL is expected in its canonical form, so that requests for the same
+ * page share one key.
+ */
+@Immutable
+@ParametersAreNonnullByDefault
+public class CrawlKey {
+
+    public final String urlString;
+    public final int depth;
+    public final CountingOptions options;
+    public final CrawlBudget budget;
+    public final boolean offline;
+
+    private CrawlKey(String urlString, int depth, CountingOptions options, CrawlBudget budget, boolean offline) {
+        this.urlString = urlString;
+        this.depth = depth;
+        this.options = options;
+        this.budget = budget;
+        this.offline = offline;
+    }
+
+    public static CrawlKey of(String urlString, int depth, CountingOptions options, CrawlBudget budget,
+                              boolean offline) {
+        return new CrawlKey(urlString, depth, options, budget, offline);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (obj == null || obj.getClass() != this.getClass()) {
+            return false;
+        }
+        CrawlKey other = (CrawlKey) obj;
+
+        return this.depth == other.depth
+                && this.offline == other.offline
+                && Objects.equals(this.urlString, other.urlString)
+                && Objects.equals(this.options, other.options)
+                && Objects.equals(this.budget, other.budget);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(urlString, depth, options, budget, offline);
+    }
+}
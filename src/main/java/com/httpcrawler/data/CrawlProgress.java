@@ -0,0 +1,35 @@
+package com.httpcrawler.data;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+
+@Immutable
+@ParametersAreNonnullByDefault
+public class CrawlProgress {
+
+    public static final CrawlProgress EMPTY = new CrawlProgress(0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+    public final long pagesFetched;
+    public final long pagesFailed;
+    public final long pagesPending;
+    public final long pagesFetching;
+    public final long pagesParsing;
+    public final long pagesCounting;
+    public final long linksDropped;
+    public final long wordsCounted;
+    public final long distinctWords;
+
+    public CrawlProgress(long pagesFetched, long pagesFailed, long pagesPending, long pagesFetching,
+                         long pagesParsing, long pagesCounting, long linksDropped, long wordsCounted,
+                         long distinctWords) {
+        this.pagesFetched = pagesFetched;
+        this.pagesFailed = pagesFailed;
+        this.pagesPending = pagesPending;
+        this.pagesFetching = pagesFetching;
+        this.pagesParsing = pagesParsing;
+        this.pagesCounting = pagesCounting;
+        this.linksDropped = linksDropped;
+        this.wordsCounted = wordsCounted;
+        this.distinctWords = distinctWords;
+    }
+}
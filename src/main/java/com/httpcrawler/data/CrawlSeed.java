@@ -0,0 +1,40 @@
+package com.httpcrawler.data;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+import java.util.Objects;
+
+/**
+ * A start URL of a crawl and how deep to follow links from it. A batch crawl has several, and tells them
+ * apart by their index, which is also their bit in the member masks of its queued URLs.
+ */
+@Immutable
+@ParametersAreNonnullByDefault
+public class CrawlSeed {
+
+    public final String urlString;
+    public final int depth;
+
+    public CrawlSeed(String urlString, int depth) {
+        this.urlString = urlString;
+        this.depth = depth;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (obj == null || obj.getClass() != this.getClass()) {
+            return false;
+        }
+        CrawlSeed other = (CrawlSeed) obj;
+
+        return this.depth == other.depth && Objects.equals(this.urlString, other.urlString);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(urlString, depth);
+    }
+}
@@ -0,0 +1,44 @@
+package com.httpcrawler.data;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.LongAdder;
+
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class CrawlStatistics {
+
+    private final LongAdder pagesFetched;
+    private final LongAdder pagesFailed;
+    private final LongAdder linksDropped;
+
+    public CrawlStatistics() {
+        this.pagesFetched = new LongAdder();
+        this.pagesFailed = new LongAdder();
+        this.linksDropped = new LongAdder();
+    }
+
+    public void pageFetched() {
+        pagesFetched.increment();
+    }
+
+    public void pageFailed() {
+        pagesFailed.increment();
+    }
+
+    public void linkDropped() {
+        linksDropped.increment();
+    }
+
+    public long pagesFetched() {
+        return pagesFetched.sum();
+    }
+
+    public long pagesFailed() {
+        return pagesFailed.sum();
+    }
+
+    public long linksDropped() {
+        return linksDropped.sum();
+    }
+}
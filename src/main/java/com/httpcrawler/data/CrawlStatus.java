@@ -0,0 +1,8 @@
+package com.httpcrawler.data;
+
+public enum CrawlStatus {
+    RUNNING,
+    FINISHED,
+    CANCELLED,
+    FAILED
+}
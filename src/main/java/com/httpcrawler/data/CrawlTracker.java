@@ -0,0 +1,103 @@
+package com.httpcrawler.data;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the pages of one crawl that are not processed yet and completes {@link #completion()} exactly when
+ * that count drops to zero. The crawl itself holds one token until all start pages are queued, so the count
+ * cannot reach zero before the crawl has begun. Children are always queued before their parent is done.
+ * Queued pages are only counted, a {@link Page} is taken when a page leaves the frontier.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class CrawlTracker {
+
+    public enum Stage {
+        QUEUED,
+        FETCHING,
+        PARSING,
+        COUNTING
+    }
+
+    private final AtomicLong pending;
+    private final AtomicLongArray inStage;
+    private final CompletableFuture<Void> completion;
+
+    public CrawlTracker() {
+        this.pending = new AtomicLong(1);
+        this.inStage = new AtomicLongArray(Stage.values().length);
+        this.completion = new CompletableFuture<>();
+    }
+
+    public void queued() {
+        pending.incrementAndGet();
+        inStage.incrementAndGet(Stage.QUEUED.ordinal());
+    }
+
+    public void dropped() {
+        inStage.decrementAndGet(Stage.QUEUED.ordinal());
+        release();
+    }
+
+    public Page take() {
+        return new Page();
+    }
+
+    public void started() {
+        release();
+    }
+
+    public void cancel() {
+        completion.cancel(false);
+    }
+
+    public void fail(Throwable e) {
+        completion.completeExceptionally(e);
+    }
+
+    public CompletableFuture<Void> completion() {
+        return completion;
+    }
+
+    public long pending() {
+        long sum = 0;
+        for (int i = 0; i < inStage.length(); i++) {
+            sum += inStage.get(i);
+        }
+        return sum;
+    }
+
+    public long inStage(Stage stage) {
+        return inStage.get(stage.ordinal());
+    }
+
+    private void release() {
+        if (pending.decrementAndGet() == 0) {
+            completion.complete(null);
+        }
+    }
+
+    @ThreadSafe
+    public class Page {
+        private volatile Stage stage;
+
+        private Page() {
+            this.stage = Stage.QUEUED;
+        }
+
+        public void moveTo(Stage next) {
+            inStage.incrementAndGet(next.ordinal());
+            inStage.decrementAndGet(stage.ordinal());
+            stage = next;
+        }
+
+        public void done() {
+            inStage.decrementAndGet(stage.ordinal());
+            release();
+        }
+    }
+}
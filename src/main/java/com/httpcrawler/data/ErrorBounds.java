@@ -0,0 +1,19 @@
+package com.httpcrawler.data;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+
+@Immutable
+@ParametersAreNonnullByDefault
+public class ErrorBounds {
+
+    public final double epsilon;
+    public final double delta;
+    public final long maxOverestimate;
+
+    public ErrorBounds(double epsilon, double delta, long maxOverestimate) {
+        this.epsilon = epsilon;
+        this.delta = delta;
+        this.maxOverestimate = maxOverestimate;
+    }
+}
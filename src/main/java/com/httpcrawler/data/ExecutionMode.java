@@ -0,0 +1,6 @@
+package com.httpcrawler.data;
+
+public enum ExecutionMode {
+    POOLS,
+    VIRTUAL
+}
@@ -0,0 +1,72 @@
+package com.httpcrawler.data;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Exact set of 64-bit URL fingerprints in a linear-probing {@code long[]}, about 8-16 bytes per URL.
+ * Two URLs collide only with probability of about {@code n^2 / 2^65}.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class FingerprintSet implements VisitedSet {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long EMPTY = 0L;
+    private static final long ZERO_REPLACEMENT = 1L;
+
+    private long[] slots;
+    private int size;
+
+    public FingerprintSet() {
+        this.slots = new long[INITIAL_CAPACITY];
+    }
+
+    @Override
+    public synchronized boolean add(long fingerprint) {
+        if (fingerprint == EMPTY) {
+            fingerprint = ZERO_REPLACEMENT;
+        }
+        if (!insert(slots, fingerprint)) {
+            return false;
+        }
+        size++;
+        if (size * 2 > slots.length) {
+            resize();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized long size() {
+        return size;
+    }
+
+    @Override
+    public synchronized long memoryBytes() {
+        return (long) slots.length * Long.BYTES;
+    }
+
+    private void resize() {
+        long[] resized = new long[slots.length * 2];
+        for (long fingerprint : slots) {
+            if (fingerprint != EMPTY) {
+                insert(resized, fingerprint);
+            }
+        }
+        slots = resized;
+    }
+
+    private static boolean insert(long[] table, long fingerprint) {
+        int mask = table.length - 1;
+        int index = (int) (fingerprint ^ fingerprint >>> 32) & mask;
+        while (table[index] != EMPTY) {
+            if (table[index] == fingerprint) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        table[index] = fingerprint;
+        return true;
+    }
+}
@@ -0,0 +1,77 @@
+package com.httpcrawler.data;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.ObjLongConsumer;
+
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+public class HeavyHitters {
+
+    private static final int CANDIDATE_BYTES = 200;
+
+    private final int capacity;
+    private final Map<String, Long> estimates;
+    private final TreeSet<Candidate> candidates;
+
+    public HeavyHitters(int capacity) {
+        this.capacity = capacity;
+        this.estimates = new HashMap<>(capacity * 2);
+        this.candidates = new TreeSet<>();
+    }
+
+    public void offer(String word, long estimate) {
+        Long current = estimates.get(word);
+        if (current != null) {
+            if (estimate > current) {
+                candidates.remove(new Candidate(word, current));
+                estimates.put(word, estimate);
+                candidates.add(new Candidate(word, estimate));
+            }
+            return;
+        }
+        if (estimates.size() >= capacity) {
+            Candidate min = candidates.first();
+            if (estimate <= min.estimate) {
+                return;
+            }
+            candidates.pollFirst();
+            estimates.remove(min.word);
+        }
+        estimates.put(word, estimate);
+        candidates.add(new Candidate(word, estimate));
+    }
+
+    public int size() {
+        return estimates.size();
+    }
+
+    public long memoryBytes() {
+        return (long) estimates.size() * CANDIDATE_BYTES;
+    }
+
+    public void forEach(ObjLongConsumer<String> consumer) {
+        for (Candidate candidate : candidates) {
+            consumer.accept(candidate.word, candidate.estimate);
+        }
+    }
+
+    private static class Candidate implements Comparable<Candidate> {
+        private final String word;
+        private final long estimate;
+
+        private Candidate(String word, long estimate) {
+            this.word = word;
+            this.estimate = estimate;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            int result = Long.compare(estimate, other.estimate);
+            return result != 0 ? result : word.compareTo(other.word);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.httpcrawler.data;
+
+public enum LinkScope {
+    PREFIX,
+    HOST,
+    DOMAIN,
+    ANY
+}
@@ -0,0 +1,38 @@
+package com.httpcrawler.data;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Estimated heap use of one crawl, from the sizes of its visited set, word counts, frontier and, for a batch crawl,
+ * the pages its seeds share.
+ */
+@Immutable
+@ParametersAreNonnullByDefault
+public class MemoryUsage {
+
+    public static final MemoryUsage EMPTY = new MemoryUsage(0, 0, 0, 0);
+
+    private static final long QUEUED_PAGE_BYTES = 160;
+
+    public final long visitedUrls;
+    public final long distinctWords;
+    public final long queuedPages;
+    public final long estimatedBytes;
+
+    private MemoryUsage(long visitedUrls, long distinctWords, long queuedPages, long estimatedBytes) {
+        this.visitedUrls = visitedUrls;
+        this.distinctWords = distinctWords;
+        this.queuedPages = queuedPages;
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    /**
+     * @param queuedPagesInMemory the queued pages that have not spilled to disk, the only ones on the heap
+     */
+    public static MemoryUsage estimate(long visitedUrls, long visitedBytes, long distinctWords, long wordsBytes,
+                                       long queuedPages, long queuedPagesInMemory, long sharedPagesBytes) {
+        return new MemoryUsage(visitedUrls, distinctWords, queuedPages,
+                visitedBytes + wordsBytes + queuedPagesInMemory * QUEUED_PAGE_BYTES + sharedPagesBytes);
+    }
+}
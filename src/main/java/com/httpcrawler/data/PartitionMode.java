@@ -0,0 +1,6 @@
+package com.httpcrawler.data;
+
+public enum PartitionMode {
+    HOST,
+    URL
+}
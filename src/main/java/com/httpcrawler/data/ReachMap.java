@@ -0,0 +1,91 @@
+package com.httpcrawler.data;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * {@link FingerprintSet} that also keeps, for every URL, the bit mask of the seeds of a batch crawl that have
+ * reached it, so a URL shared by several seeds is queued again only for the seeds that had not reached it yet.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class ReachMap implements VisitedSet {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long EMPTY = 0L;
+    private static final long ZERO_REPLACEMENT = 1L;
+    private static final long ALL_MEMBERS = -1L;
+
+    private long[] fingerprints;
+    private long[] members;
+    private int size;
+
+    public ReachMap() {
+        this.fingerprints = new long[INITIAL_CAPACITY];
+        this.members = new long[INITIAL_CAPACITY];
+    }
+
+    @Override
+    public boolean add(long fingerprint) {
+        return claim(fingerprint, ALL_MEMBERS) != 0;
+    }
+
+    @Override
+    public synchronized long claim(long fingerprint, long claimed) {
+        if (fingerprint == EMPTY) {
+            fingerprint = ZERO_REPLACEMENT;
+        }
+        int index = indexOf(fingerprints, fingerprint);
+        if (fingerprints[index] == fingerprint) {
+            long added = claimed & ~members[index];
+            members[index] |= added;
+            return added;
+        }
+        if (claimed == 0) {
+            return 0;
+        }
+        fingerprints[index] = fingerprint;
+        members[index] = claimed;
+        size++;
+        if (size * 2 > fingerprints.length) {
+            resize();
+        }
+        return claimed;
+    }
+
+    @Override
+    public synchronized long size() {
+        return size;
+    }
+
+    @Override
+    public synchronized long memoryBytes() {
+        return (long) fingerprints.length * Long.BYTES * 2;
+    }
+
+    private void resize() {
+        long[] resizedFingerprints = new long[fingerprints.length * 2];
+        long[] resizedMembers = new long[members.length * 2];
+        for (int i = 0; i < fingerprints.length; i++) {
+            if (fingerprints[i] != EMPTY) {
+                int index = indexOf(resizedFingerprints, fingerprints[i]);
+                resizedFingerprints[index] = fingerprints[i];
+                resizedMembers[index] = members[i];
+            }
+        }
+        fingerprints = resizedFingerprints;
+        members = resizedMembers;
+    }
+
+    /**
+     * @return the slot holding the fingerprint, or the empty slot where it belongs
+     */
+    private static int indexOf(long[] table, long fingerprint) {
+        int mask = table.length - 1;
+        int index = (int) (fingerprint ^ fingerprint >>> 32) & mask;
+        while (table[index] != EMPTY && table[index] != fingerprint) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+}
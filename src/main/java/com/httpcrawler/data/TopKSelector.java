@@ -0,0 +1,157 @@
+package com.httpcrawler.data;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Keeps the {@code capacity} most frequent words seen so far in a bounded min-heap. Equal counts are ordered
+ * by word, so the selection does not depend on iteration order.
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+public class TopKSelector {
+
+    private final int capacity;
+    private final String[] words;
+    private final long[] counts;
+    private int size;
+
+    public TopKSelector(int capacity) {
+        this.capacity = capacity;
+        this.words = new String[capacity];
+        this.counts = new long[capacity];
+    }
+
+    public static TopKSelector select(WordCounter wordCounter, int capacity) {
+        TopKSelector selector = new TopKSelector(capacity);
+        wordCounter.forEach(selector::offer);
+        return selector;
+    }
+
+    public static TopKSelector select(WordCounter wordCounter, int capacity, ForkJoinPool pool) {
+        return pool.invoke(new SelectTask(wordCounter, capacity, 0, wordCounter.shardCount()));
+    }
+
+    public void offer(String word, long count) {
+        if (size < capacity) {
+            words[size] = word;
+            counts[size] = count;
+            siftUp(size++);
+        } else if (capacity > 0 && isBefore(word, count, words[0], counts[0])) {
+            words[0] = word;
+            counts[0] = count;
+            siftDown(0);
+        }
+    }
+
+    public void addAll(TopKSelector other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.words[i], other.counts[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Map<String, Long> toMap() {
+        String[] sortedWords = new String[size];
+        long[] sortedCounts = new long[size];
+        int remaining = size;
+        String[] heapWords = words.clone();
+        long[] heapCounts = counts.clone();
+        for (int i = remaining - 1; i >= 0; i--) {
+            sortedWords[i] = heapWords[0];
+            sortedCounts[i] = heapCounts[0];
+            remaining--;
+            heapWords[0] = heapWords[remaining];
+            heapCounts[0] = heapCounts[remaining];
+            siftDown(heapWords, heapCounts, remaining, 0);
+        }
+        Map<String, Long> result = new LinkedHashMap<>(size * 2);
+        for (int i = 0; i < sortedWords.length; i++) {
+            result.put(sortedWords[i], sortedCounts[i]);
+        }
+        return result;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!isBefore(words[parent], counts[parent], words[index], counts[index])) {
+                return;
+            }
+            swap(words, counts, parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        siftDown(words, counts, size, index);
+    }
+
+    private static void siftDown(String[] words, long[] counts, int size, int index) {
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && isBefore(words[child], counts[child], words[child + 1], counts[child + 1])) {
+                child++;
+            }
+            if (!isBefore(words[index], counts[index], words[child], counts[child])) {
+                return;
+            }
+            swap(words, counts, index, child);
+            index = child;
+        }
+    }
+
+    private static boolean isBefore(String word, long count, String otherWord, long otherCount) {
+        return count > otherCount || (count == otherCount && word.compareTo(otherWord) < 0);
+    }
+
+    private static void swap(String[] words, long[] counts, int i, int j) {
+        String word = words[i];
+        words[i] = words[j];
+        words[j] = word;
+        long count = counts[i];
+        counts[i] = counts[j];
+        counts[j] = count;
+    }
+
+    private static class SelectTask extends RecursiveTask<TopKSelector> {
+        private final WordCounter wordCounter;
+        private final int capacity;
+        private final int fromShard;
+        private final int toShard;
+
+        private SelectTask(WordCounter wordCounter, int capacity, int fromShard, int toShard) {
+            this.wordCounter = wordCounter;
+            this.capacity = capacity;
+            this.fromShard = fromShard;
+            this.toShard = toShard;
+        }
+
+        @Override
+        protected TopKSelector compute() {
+            if (toShard - fromShard <= 1) {
+                TopKSelector selector = new TopKSelector(capacity);
+                for (int shard = fromShard; shard < toShard; shard++) {
+                    wordCounter.forEach(shard, selector::offer);
+                }
+                return selector;
+            }
+            int middle = (fromShard + toShard) >>> 1;
+            SelectTask left = new SelectTask(wordCounter, capacity, fromShard, middle);
+            left.fork();
+            TopKSelector result = new SelectTask(wordCounter, capacity, middle, toShard).compute();
+            result.addAll(left.join());
+            return result;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.httpcrawler.data;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+import java.util.Collections;
+import java.util.Map;
+
+@Immutable
+@ParametersAreNonnullByDefault
+public class TopWords {
+
+    public final Map<String, Long> words;
+    public final long totalWords;
+    @Nullable
+    public final ErrorBounds errorBounds;
+    /**
+     * Whether the crawl stopped on its budget or deadline before it had covered everything in scope.
+     */
+    public final boolean truncated;
+
+    public TopWords(Map<String, Long> words, long totalWords, @Nullable ErrorBounds errorBounds, boolean truncated) {
+        this.words = Collections.unmodifiableMap(words);
+        this.totalWords = totalWords;
+        this.errorBounds = errorBounds;
+        this.truncated = truncated;
+    }
+}
@@ -0,0 +1,26 @@
+package com.httpcrawler.data;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+@ParametersAreNonnullByDefault
+public interface VisitedSet {
+
+    /**
+     * @return {@code true} if the fingerprint was not seen before and has been added.
+     */
+    boolean add(long fingerprint);
+
+    /**
+     * Marks the URL as reached by the seeds in the {@code members} bit mask. Sets that do not keep track of
+     * seeds treat every claim after the first as already seen.
+     *
+     * @return the members that had not reached the URL before
+     */
+    default long claim(long fingerprint, long members) {
+        return add(fingerprint) ? members : 0;
+    }
+
+    long size();
+
+    long memoryBytes();
+}
@@ -0,0 +1,147 @@
+package com.httpcrawler.data;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Open-addressing {@code String -> long} counter that is looked up by a region of a char buffer, so a word
+ * is turned into a {@link String} only the first time it is seen. It holds the words of one page as well as
+ * the running counts of a whole crawl.
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+public class WordCountTable {
+
+    private static final int DEFAULT_CAPACITY = 256;
+    private static final int SLOT_BYTES = 16;
+    private static final int WORD_BYTES = 56;
+
+    private String[] words;
+    private int[] hashes;
+    private long[] counts;
+    private int size;
+    private int mask;
+
+    public WordCountTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public WordCountTable(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        allocate(capacity);
+    }
+
+    public void add(char[] chars, int offset, int length) {
+        int hash = hash(chars, offset, length);
+        int index = mix(hash) & mask;
+        while (true) {
+            String word = words[index];
+            if (word == null) {
+                insert(index, new String(chars, offset, length), hash, 1);
+                return;
+            }
+            if (hashes[index] == hash && regionEquals(word, chars, offset, length)) {
+                counts[index]++;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    public void add(String word, long count) {
+        int hash = word.hashCode();
+        int index = mix(hash) & mask;
+        while (true) {
+            String existing = words[index];
+            if (existing == null) {
+                insert(index, word, hash, count);
+                return;
+            }
+            if (hashes[index] == hash && existing.equals(word)) {
+                counts[index] += count;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long memoryBytes() {
+        return (long) words.length * SLOT_BYTES + (long) size * WORD_BYTES;
+    }
+
+    public void forEach(ObjLongConsumer<String> consumer) {
+        for (int i = 0; i < words.length; i++) {
+            if (words[i] != null) {
+                consumer.accept(words[i], counts[i]);
+            }
+        }
+    }
+
+    private void insert(int index, String word, int hash, long count) {
+        words[index] = word;
+        hashes[index] = hash;
+        counts[index] = count;
+        if (++size * 2 > words.length) {
+            resize();
+        }
+    }
+
+    private void resize() {
+        String[] oldWords = words;
+        int[] oldHashes = hashes;
+        long[] oldCounts = counts;
+        allocate(oldWords.length * 2);
+        for (int i = 0; i < oldWords.length; i++) {
+            if (oldWords[i] != null) {
+                int index = mix(oldHashes[i]) & mask;
+                while (words[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                words[index] = oldWords[i];
+                hashes[index] = oldHashes[i];
+                counts[index] = oldCounts[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.words = new String[capacity];
+        this.hashes = new int[capacity];
+        this.counts = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    private static int hash(char[] chars, int offset, int length) {
+        int hash = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        return hash;
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean regionEquals(String word, char[] chars, int offset, int length) {
+        if (word.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (word.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
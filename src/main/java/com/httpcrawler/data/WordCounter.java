@@ -0,0 +1,29 @@
+package com.httpcrawler.data;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.function.ObjLongConsumer;
+
+@ParametersAreNonnullByDefault
+public interface WordCounter {
+
+    void addAll(WordCountTable page);
+
+    void forEach(ObjLongConsumer<String> consumer);
+
+    int shardCount();
+
+    void forEach(int shard, ObjLongConsumer<String> consumer);
+
+    long size();
+
+    long totalWords();
+
+    /**
+     * @return an estimate of the heap this counter holds, including its words
+     */
+    long memoryBytes();
+
+    @Nullable
+    ErrorBounds errorBounds();
+}
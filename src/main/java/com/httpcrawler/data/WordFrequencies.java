@@ -0,0 +1,130 @@
+package com.httpcrawler.data;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Word counts of one crawl, striped by word hash over independently locked shards. A page is merged with
+ * one lock acquisition per shard it touches; readers walk the shards in place instead of copying them.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class WordFrequencies implements WordCounter {
+
+    private final WordCountTable[] shards;
+    private final int shift;
+    private final LongAdder totalWords;
+
+    public WordFrequencies(int shardCount) {
+        if (shardCount <= 0 || Integer.bitCount(shardCount) != 1) {
+            throw new IllegalArgumentException("shardCount must be a positive power of two: " + shardCount);
+        }
+        this.shards = new WordCountTable[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new WordCountTable();
+        }
+        this.shift = Integer.SIZE - Integer.numberOfTrailingZeros(shardCount);
+        this.totalWords = new LongAdder();
+    }
+
+    @Override
+    public void addAll(WordCountTable page) {
+        int size = page.size();
+        if (size == 0) {
+            return;
+        }
+        String[] words = new String[size];
+        long[] counts = new long[size];
+        int[] offsets = new int[shards.length + 1];
+        page.forEach((word, count) -> offsets[shardOf(word) + 1]++);
+        for (int i = 0; i < shards.length; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] cursors = offsets.clone();
+        long[] total = new long[1];
+        page.forEach((word, count) -> {
+            int index = cursors[shardOf(word)]++;
+            words[index] = word;
+            counts[index] = count;
+            total[0] += count;
+        });
+        totalWords.add(total[0]);
+        for (int shard = 0; shard < shards.length; shard++) {
+            if (offsets[shard] == offsets[shard + 1]) {
+                continue;
+            }
+            WordCountTable table = shards[shard];
+            synchronized (table) {
+                for (int i = offsets[shard]; i < offsets[shard + 1]; i++) {
+                    table.add(words[i], counts[i]);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void forEach(ObjLongConsumer<String> consumer) {
+        for (WordCountTable table : shards) {
+            synchronized (table) {
+                table.forEach(consumer);
+            }
+        }
+    }
+
+    @Override
+    public int shardCount() {
+        return shards.length;
+    }
+
+    @Override
+    public void forEach(int shard, ObjLongConsumer<String> consumer) {
+        WordCountTable table = shards[shard];
+        synchronized (table) {
+            table.forEach(consumer);
+        }
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (WordCountTable table : shards) {
+            synchronized (table) {
+                size += table.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public long totalWords() {
+        return totalWords.sum();
+    }
+
+    @Override
+    public long memoryBytes() {
+        long bytes = 0;
+        for (WordCountTable table : shards) {
+            synchronized (table) {
+                bytes += table.memoryBytes();
+            }
+        }
+        return bytes;
+    }
+
+    @Nullable
+    @Override
+    public ErrorBounds errorBounds() {
+        return null;
+    }
+
+    private int shardOf(String word) {
+        if (shift == Integer.SIZE) {
+            return 0;
+        }
+        int h = word.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) >>> shift;
+    }
+}
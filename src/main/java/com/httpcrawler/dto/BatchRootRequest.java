@@ -0,0 +1,25 @@
+package com.httpcrawler.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+@ParametersAreNonnullByDefault
+public class BatchRootRequest {
+
+    @Nullable
+    public final String urlString;
+    @Nullable
+    public final Integer depth;
+
+    @JsonCreator
+    public BatchRootRequest(
+            @Nullable @JsonProperty("urlString") String urlString,
+            @Nullable @JsonProperty("depth") Integer depth
+    ) {
+        this.urlString = urlString;
+        this.depth = depth;
+    }
+}
@@ -0,0 +1,31 @@
+package com.httpcrawler.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.httpcrawler.data.CrawlSeed;
+import com.httpcrawler.data.TopWords;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Map;
+
+@ParametersAreNonnullByDefault
+public class BatchRootResponse {
+
+    public final String urlString;
+    public final int depth;
+    public final boolean truncated;
+    public final Map<String, Long> topWordsFrequency;
+    @Nullable
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public final ErrorBoundsResponse errorBounds;
+
+    public BatchRootResponse(CrawlSeed seed, TopWords topWords) {
+        this.urlString = seed.urlString;
+        this.depth = seed.depth;
+        this.truncated = topWords.truncated;
+        this.topWordsFrequency = topWords.words;
+        this.errorBounds = topWords.errorBounds == null
+                ? null
+                : new ErrorBoundsResponse(topWords.errorBounds, topWords.totalWords);
+    }
+}
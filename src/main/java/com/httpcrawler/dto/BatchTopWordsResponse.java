@@ -0,0 +1,23 @@
+package com.httpcrawler.dto;
+
+import com.httpcrawler.data.BatchTopWords;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.ArrayList;
+import java.util.List;
+
+@ParametersAreNonnullByDefault
+public class BatchTopWordsResponse {
+
+    public final List<BatchRootResponse> roots;
+    public final TopWordsResponse combined;
+
+    public BatchTopWordsResponse(BatchTopWords batchTopWords) {
+        List<BatchRootResponse> roots = new ArrayList<>(batchTopWords.seeds.size());
+        for (int i = 0; i < batchTopWords.seeds.size(); i++) {
+            roots.add(new BatchRootResponse(batchTopWords.seeds.get(i), batchTopWords.seedTopWords.get(i)));
+        }
+        this.roots = roots;
+        this.combined = new TopWordsResponse(batchTopWords.combined);
+    }
+}
@@ -0,0 +1,50 @@
+package com.httpcrawler.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.httpcrawler.data.CrawlJob;
+import com.httpcrawler.data.CrawlProgress;
+import com.httpcrawler.data.CrawlStatus;
+import com.httpcrawler.data.MemoryUsage;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+@ParametersAreNonnullByDefault
+public class CrawlJobResponse {
+
+    public final String id;
+    public final String urlString;
+    public final int depth;
+    public final boolean offline;
+    public final CrawlStatus status;
+    public final long pagesFetched;
+    public final long pagesFailed;
+    public final long pagesPending;
+    public final long pagesFetching;
+    public final long pagesParsing;
+    public final long pagesCounting;
+    public final long linksDropped;
+    public final long wordsCounted;
+    public final long distinctWords;
+    @Nullable
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public final MemoryUsageResponse memory;
+
+    public CrawlJobResponse(CrawlJob job, CrawlProgress progress, @Nullable MemoryUsage memoryUsage) {
+        this.id = job.id;
+        this.urlString = job.root.urlString;
+        this.depth = job.root.depth;
+        this.offline = job.offline;
+        this.status = job.status();
+        this.pagesFetched = progress.pagesFetched;
+        this.pagesFailed = progress.pagesFailed;
+        this.pagesPending = progress.pagesPending;
+        this.pagesFetching = progress.pagesFetching;
+        this.pagesParsing = progress.pagesParsing;
+        this.pagesCounting = progress.pagesCounting;
+        this.linksDropped = progress.linksDropped;
+        this.wordsCounted = progress.wordsCounted;
+        this.distinctWords = progress.distinctWords;
+        this.memory = memoryUsage == null ? null : new MemoryUsageResponse(memoryUsage);
+    }
+}
@@ -0,0 +1,34 @@
+package com.httpcrawler.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.httpcrawler.data.CrawlJob;
+import com.httpcrawler.data.CrawlStatus;
+import com.httpcrawler.data.TopWords;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Map;
+
+@ParametersAreNonnullByDefault
+public class CrawlTopWordsResponse {
+
+    public final String id;
+    public final CrawlStatus status;
+    public final boolean partial;
+    public final boolean truncated;
+    public final Map<String, Long> topWordsFrequency;
+    @Nullable
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public final ErrorBoundsResponse errorBounds;
+
+    public CrawlTopWordsResponse(CrawlJob job, TopWords topWords) {
+        this.id = job.id;
+        this.status = job.status();
+        this.partial = status != CrawlStatus.FINISHED;
+        this.truncated = topWords.truncated;
+        this.topWordsFrequency = topWords.words;
+        this.errorBounds = topWords.errorBounds == null
+                ? null
+                : new ErrorBoundsResponse(topWords.errorBounds, topWords.totalWords);
+    }
+}
@@ -0,0 +1,21 @@
+package com.httpcrawler.dto;
+
+import com.httpcrawler.data.ErrorBounds;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+@ParametersAreNonnullByDefault
+public class ErrorBoundsResponse {
+
+    public final double epsilon;
+    public final double delta;
+    public final long totalWords;
+    public final long maxOverestimate;
+
+    public ErrorBoundsResponse(ErrorBounds errorBounds, long totalWords) {
+        this.epsilon = errorBounds.epsilon;
+        this.delta = errorBounds.delta;
+        this.totalWords = totalWords;
+        this.maxOverestimate = errorBounds.maxOverestimate;
+    }
+}
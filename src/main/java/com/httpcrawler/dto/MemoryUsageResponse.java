@@ -0,0 +1,21 @@
+package com.httpcrawler.dto;
+
+import com.httpcrawler.data.MemoryUsage;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+@ParametersAreNonnullByDefault
+public class MemoryUsageResponse {
+
+    public final long visitedUrls;
+    public final long distinctWords;
+    public final long queuedPages;
+    public final long estimatedBytes;
+
+    public MemoryUsageResponse(MemoryUsage usage) {
+        this.visitedUrls = usage.visitedUrls;
+        this.distinctWords = usage.distinctWords;
+        this.queuedPages = usage.queuedPages;
+        this.estimatedBytes = usage.estimatedBytes;
+    }
+}
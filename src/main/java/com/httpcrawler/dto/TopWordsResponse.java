@@ -1,15 +1,26 @@
 package com.httpcrawler.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.httpcrawler.data.TopWords;
+
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
-import java.util.Collections;
 import java.util.Map;
 
 @ParametersAreNonnullByDefault
 public class TopWordsResponse {
 
     public final Map<String, Long> topWordsFrequency;
+    public final boolean truncated;
+    @Nullable
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public final ErrorBoundsResponse errorBounds;
 
-    public TopWordsResponse(Map<String, Long> topWordsFrequency) {
-        this.topWordsFrequency = Collections.unmodifiableMap(topWordsFrequency);
+    public TopWordsResponse(TopWords topWords) {
+        this.topWordsFrequency = topWords.words;
+        this.truncated = topWords.truncated;
+        this.errorBounds = topWords.errorBounds == null
+                ? null
+                : new ErrorBoundsResponse(topWords.errorBounds, topWords.totalWords);
     }
 }
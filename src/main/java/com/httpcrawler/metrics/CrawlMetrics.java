@@ -0,0 +1,149 @@
+package com.httpcrawler.metrics;
+
+import com.httpcrawler.data.CrawlStatus;
+import com.httpcrawler.data.Root;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Meters of the crawl pipeline, all named {@code crawler.*}. Per crawl gauges are tagged with the crawl root
+ * and removed when the crawl is cleaned up. Fetch meters are tagged with the host for the first
+ * {@code maxHosts} hosts seen and with {@code other} for the rest, so crawling many sites cannot grow the
+ * number of fetch timers and histograms without bound.
+ */
+@Component
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class CrawlMetrics {
+
+    private static final String OTHER_HOST = "other";
+
+    private final MeterRegistry registry;
+    private final int maxHosts;
+    private final Set<String> hosts;
+    private final ConcurrentMap<Root, List<Meter>> rootMeters;
+    private final Timer parseTimer;
+    private final Timer countTimer;
+
+    public CrawlMetrics(MeterRegistry registry, @Value("${crawler-metrics.max-hosts:100}") int maxHosts) {
+        this.registry = registry;
+        this.maxHosts = maxHosts;
+        this.hosts = ConcurrentHashMap.newKeySet();
+        this.rootMeters = new ConcurrentHashMap<>();
+        this.parseTimer = Timer.builder("crawler.page.parse")
+                .description("Time spent decoding, tokenizing and extracting links of one page")
+                .register(registry);
+        this.countTimer = Timer.builder("crawler.page.count")
+                .description("Time spent merging the words of one page into the crawl result")
+                .register(registry);
+    }
+
+    public void fetched(String host, int status, long nanos, long bytes) {
+        String hostTag = hostTag(host);
+        fetchTimer(hostTag, Integer.toString(status)).record(nanos, TimeUnit.NANOSECONDS);
+        bytesCounter(hostTag).increment(bytes);
+    }
+
+    public void fetchFailed(String host, FetchFailure cause, long nanos, long bytes) {
+        String hostTag = hostTag(host);
+        fetchTimer(hostTag, cause.tag).record(nanos, TimeUnit.NANOSECONDS);
+        bytesCounter(hostTag).increment(bytes);
+    }
+
+    public void failed(FetchFailure cause) {
+        Counter.builder("crawler.fetch.failures")
+                .description("Pages that could not be fetched or parsed, by cause")
+                .tag("cause", cause.tag)
+                .register(registry)
+                .increment();
+    }
+
+    public void pageParsed(long nanos) {
+        parseTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void pageCounted(long nanos) {
+        countTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void crawlFinished(CrawlStatus status, long millis) {
+        Timer.builder("crawler.crawl.duration")
+                .description("End-to-end duration of a crawl")
+                .tag("status", status.name().toLowerCase(Locale.ROOT))
+                .register(registry)
+                .record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    public void monitor(ExecutorService executorService, String name) {
+        new ExecutorServiceMetrics(executorService, name, Tags.empty()).bindTo(registry);
+    }
+
+    public void gauge(String name, String description, Supplier<Number> value) {
+        Gauge.builder(name, value).description(description).register(registry);
+    }
+
+    /**
+     * Registers the gauges of a running crawl; {@code values} maps gauge names to their suppliers.
+     */
+    public void rootStarted(Root root, Map<String, Supplier<Number>> values) {
+        Tags tags = Tags.of("root", root.urlString, "crawl", Integer.toString(root.rand));
+        List<Meter> meters = new ArrayList<>(values.size());
+        values.forEach((name, value) -> meters.add(Gauge.builder(name, value).tags(tags).register(registry)));
+        rootMeters.put(root, meters);
+    }
+
+    public void rootFinished(Root root) {
+        List<Meter> meters = rootMeters.remove(root);
+        if (meters != null) {
+            meters.forEach(registry::remove);
+        }
+    }
+
+    private String hostTag(String host) {
+        if (hosts.contains(host)) {
+            return host;
+        }
+        synchronized (hosts) {
+            if (hosts.size() < maxHosts) {
+                hosts.add(host);
+                return host;
+            }
+        }
+        return OTHER_HOST;
+    }
+
+    private Timer fetchTimer(String host, String status) {
+        return Timer.builder("crawler.fetch")
+                .description("Fetch latency from sending the request to the end of the body")
+                .tags("host", host, "status", status)
+                .register(registry);
+    }
+
+    private Counter bytesCounter(String host) {
+        return Counter.builder("crawler.fetch.bytes")
+                .description("Response body bytes downloaded")
+                .baseUnit("bytes")
+                .tag("host", host)
+                .register(registry);
+    }
+}
@@ -0,0 +1,73 @@
+package com.httpcrawler.metrics;
+
+import com.httpcrawler.repository.client.RejectedPageException;
+import org.apache.http.conn.ConnectTimeoutException;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.http.HttpTimeoutException;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+@ParametersAreNonnullByDefault
+public enum FetchFailure {
+    TIMEOUT,
+    DNS,
+    CONNECT,
+    NON_2XX,
+    CONTENT_TYPE,
+    TOO_LARGE,
+    PARSE,
+    NOT_STORED,
+    CANCELLED,
+    IO,
+    OTHER;
+
+    public final String tag = name().toLowerCase(Locale.ROOT);
+
+    public static FetchFailure of(Throwable e) {
+        Throwable cause = e;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof RejectedPageException) {
+            switch (((RejectedPageException) cause).reason) {
+                case STATUS:
+                    return NON_2XX;
+                case CONTENT_TYPE:
+                    return CONTENT_TYPE;
+                default:
+                    return TOO_LARGE;
+            }
+        }
+        if (cause instanceof SocketTimeoutException || cause instanceof ConnectTimeoutException
+                || cause instanceof HttpTimeoutException || cause instanceof TimeoutException) {
+            return TIMEOUT;
+        }
+        if (cause instanceof UnknownHostException) {
+            return DNS;
+        }
+        if (cause instanceof ConnectException || cause instanceof NoRouteToHostException) {
+            return CONNECT;
+        }
+        if (cause instanceof FileNotFoundException) {
+            return NOT_STORED;
+        }
+        if (cause instanceof CancellationException) {
+            return CANCELLED;
+        }
+        if (cause instanceof IOException) {
+            return IO;
+        }
+        return OTHER;
+    }
+}
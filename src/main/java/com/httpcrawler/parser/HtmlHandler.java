@@ -0,0 +1,17 @@
+package com.httpcrawler.parser;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+@ParametersAreNonnullByDefault
+public interface HtmlHandler {
+
+    void onLink(String href);
+
+    /**
+     * Called for the first {@code <base href>} of the page, which relative links resolve against.
+     */
+    default void onBase(String href) {
+    }
+
+    void onText(char[] chars, int offset, int length);
+}
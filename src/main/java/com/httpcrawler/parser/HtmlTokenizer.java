@@ -0,0 +1,469 @@
+package com.httpcrawler.parser;
+
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Map;
+
+/**
+ * Push tokenizer for HTML: consumes the page in arbitrary chunks and reports {@code <a href>} links, the
+ * {@code <base href>} and text as it goes, without building a document. All text outside script, style and
+ * title elements is reported, in the head as well as the body; an HTML parser moves stray head text into the
+ * body anyway, so this matches the body text of the parsed page. Block level tags separate text the way
+ * {@code Element.text()} does.
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+public class HtmlTokenizer {
+
+    private static final int MAX_TAG_NAME_LENGTH = 16;
+    private static final int MAX_ATTRIBUTE_NAME_LENGTH = 16;
+    private static final int MAX_ATTRIBUTE_VALUE_LENGTH = 2048;
+    private static final int MAX_CHAR_REFERENCE_LENGTH = 10;
+
+    private static final char[] SPACE = {' '};
+    private static final char[] LESS_THAN = {'<'};
+    private static final String[] RAW_TEXT_TAGS = {"script", "style", "title"};
+    private static final String[] INLINE_TAGS = {
+            "a", "abbr", "b", "bdi", "bdo", "cite", "code", "data", "dfn", "em", "font", "i", "img", "kbd",
+            "mark", "q", "s", "samp", "small", "span", "strong", "sub", "sup", "time", "u", "var", "wbr"
+    };
+    private static final String[] LATIN_1_CHAR_REFERENCES = {
+            "nbsp", "iexcl", "cent", "pound", "curren", "yen", "brvbar", "sect", "uml", "copy", "ordf", "laquo",
+            "not", "shy", "reg", "macr", "deg", "plusmn", "sup2", "sup3", "acute", "micro", "para", "middot",
+            "cedil", "sup1", "ordm", "raquo", "frac14", "frac12", "frac34", "iquest", "Agrave", "Aacute", "Acirc",
+            "Atilde", "Auml", "Aring", "AElig", "Ccedil", "Egrave", "Eacute", "Ecirc", "Euml", "Igrave", "Iacute",
+            "Icirc", "Iuml", "ETH", "Ntilde", "Ograve", "Oacute", "Ocirc", "Otilde", "Ouml", "times", "Oslash",
+            "Ugrave", "Uacute", "Ucirc", "Uuml", "Yacute", "THORN", "szlig", "agrave", "aacute", "acirc", "atilde",
+            "auml", "aring", "aelig", "ccedil", "egrave", "eacute", "ecirc", "euml", "igrave", "iacute", "icirc",
+            "iuml", "eth", "ntilde", "ograve", "oacute", "ocirc", "otilde", "ouml", "divide", "oslash", "ugrave",
+            "uacute", "ucirc", "uuml", "yacute", "thorn", "yuml"
+    };
+    private static final Map<String, Character> NAMED_CHAR_REFERENCES = namedCharReferences();
+
+    private enum State {
+        TEXT,
+        CHAR_REFERENCE,
+        TAG_OPEN,
+        END_TAG_OPEN,
+        TAG_NAME,
+        BEFORE_ATTRIBUTE_NAME,
+        ATTRIBUTE_NAME,
+        AFTER_ATTRIBUTE_NAME,
+        BEFORE_ATTRIBUTE_VALUE,
+        ATTRIBUTE_VALUE,
+        MARKUP_DECLARATION,
+        COMMENT,
+        BOGUS_COMMENT,
+        RAW_TEXT
+    }
+
+    private final HtmlHandler handler;
+    private final StringBuilder tagName;
+    private final StringBuilder attributeName;
+    private final StringBuilder attributeValue;
+    private final StringBuilder charReference;
+    private final char[] charReferenceValue;
+
+    private State state;
+    private boolean endTag;
+    private char quote;
+    private boolean capturingValue;
+    private boolean valueOverflow;
+    private int dashes;
+    private int rawTextMatched;
+    @Nullable
+    private String rawTextTag;
+    @Nullable
+    private String href;
+    private boolean baseSeen;
+
+    public HtmlTokenizer(HtmlHandler handler) {
+        this.handler = handler;
+        this.tagName = new StringBuilder(MAX_TAG_NAME_LENGTH);
+        this.attributeName = new StringBuilder(MAX_ATTRIBUTE_NAME_LENGTH);
+        this.attributeValue = new StringBuilder();
+        this.charReference = new StringBuilder(MAX_CHAR_REFERENCE_LENGTH);
+        this.charReferenceValue = new char[2];
+        this.state = State.TEXT;
+    }
+
+    public void feed(char[] chars, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            char c = chars[i];
+            switch (state) {
+                case TEXT:
+                    int start = i;
+                    while (i < end && chars[i] != '<' && chars[i] != '&') {
+                        i++;
+                    }
+                    if (i > start) {
+                        handler.onText(chars, start, i - start);
+                    }
+                    if (i < end) {
+                        state = chars[i] == '<' ? State.TAG_OPEN : State.CHAR_REFERENCE;
+                        charReference.setLength(0);
+                        i++;
+                    }
+                    break;
+                case CHAR_REFERENCE:
+                    if (c == ';') {
+                        emitCharReference(true);
+                        state = State.TEXT;
+                        i++;
+                    } else if (charReference.length() < MAX_CHAR_REFERENCE_LENGTH
+                            && (isAsciiLetterOrDigit(c) || (c == '#' && charReference.length() == 0))) {
+                        charReference.append(c);
+                        i++;
+                    } else {
+                        emitCharReference(false);
+                        state = State.TEXT;
+                    }
+                    break;
+                case TAG_OPEN:
+                    if (c == '!') {
+                        state = State.MARKUP_DECLARATION;
+                        dashes = 0;
+                        i++;
+                    } else if (c == '/') {
+                        state = State.END_TAG_OPEN;
+                        i++;
+                    } else if (isAsciiLetter(c)) {
+                        startTag(false);
+                    } else if (c == '?') {
+                        state = State.BOGUS_COMMENT;
+                        i++;
+                    } else {
+                        handler.onText(LESS_THAN, 0, 1);
+                        state = State.TEXT;
+                    }
+                    break;
+                case END_TAG_OPEN:
+                    if (isAsciiLetter(c)) {
+                        startTag(true);
+                    } else {
+                        state = State.BOGUS_COMMENT;
+                    }
+                    break;
+                case TAG_NAME:
+                    if (isWhitespace(c) || c == '/') {
+                        state = State.BEFORE_ATTRIBUTE_NAME;
+                    } else if (c == '>') {
+                        emitTag();
+                    } else if (tagName.length() < MAX_TAG_NAME_LENGTH) {
+                        tagName.append(toLowerAscii(c));
+                    }
+                    i++;
+                    break;
+                case BEFORE_ATTRIBUTE_NAME:
+                    if (c == '>') {
+                        emitTag();
+                    } else if (!isWhitespace(c) && c != '/') {
+                        attributeName.setLength(0);
+                        attributeName.append(toLowerAscii(c));
+                        state = State.ATTRIBUTE_NAME;
+                    }
+                    i++;
+                    break;
+                case ATTRIBUTE_NAME:
+                    if (isWhitespace(c)) {
+                        state = State.AFTER_ATTRIBUTE_NAME;
+                    } else if (c == '/') {
+                        state = State.BEFORE_ATTRIBUTE_NAME;
+                    } else if (c == '=') {
+                        state = State.BEFORE_ATTRIBUTE_VALUE;
+                    } else if (c == '>') {
+                        emitTag();
+                    } else if (attributeName.length() < MAX_ATTRIBUTE_NAME_LENGTH) {
+                        attributeName.append(toLowerAscii(c));
+                    }
+                    i++;
+                    break;
+                case AFTER_ATTRIBUTE_NAME:
+                    if (c == '=') {
+                        state = State.BEFORE_ATTRIBUTE_VALUE;
+                        i++;
+                    } else if (c == '>') {
+                        emitTag();
+                        i++;
+                    } else if (isWhitespace(c) || c == '/') {
+                        i++;
+                    } else {
+                        state = State.BEFORE_ATTRIBUTE_NAME;
+                    }
+                    break;
+                case BEFORE_ATTRIBUTE_VALUE:
+                    if (isWhitespace(c)) {
+                        i++;
+                    } else if (c == '>') {
+                        emitTag();
+                        i++;
+                    } else {
+                        startAttributeValue();
+                        if (c == '"' || c == '\'') {
+                            quote = c;
+                            i++;
+                        } else {
+                            quote = 0;
+                        }
+                        state = State.ATTRIBUTE_VALUE;
+                    }
+                    break;
+                case ATTRIBUTE_VALUE:
+                    if (quote != 0 ? c == quote : isWhitespace(c)) {
+                        finishAttributeValue();
+                        state = State.BEFORE_ATTRIBUTE_NAME;
+                    } else if (quote == 0 && c == '>') {
+                        finishAttributeValue();
+                        emitTag();
+                    } else if (capturingValue) {
+                        if (attributeValue.length() < MAX_ATTRIBUTE_VALUE_LENGTH) {
+                            attributeValue.append(c);
+                        } else {
+                            valueOverflow = true;
+                        }
+                    }
+                    i++;
+                    break;
+                case MARKUP_DECLARATION:
+                    if (c == '-') {
+                        dashes++;
+                        i++;
+                        if (dashes == 2) {
+                            state = State.COMMENT;
+                            dashes = 0;
+                        }
+                    } else {
+                        state = State.BOGUS_COMMENT;
+                    }
+                    break;
+                case COMMENT:
+                    if (c == '>' && dashes >= 2) {
+                        state = State.TEXT;
+                    } else if (c == '-') {
+                        dashes++;
+                    } else {
+                        dashes = 0;
+                    }
+                    i++;
+                    break;
+                case BOGUS_COMMENT:
+                    if (c == '>') {
+                        state = State.TEXT;
+                    }
+                    i++;
+                    break;
+                case RAW_TEXT:
+                    matchRawTextEnd(c);
+                    i++;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown state " + state);
+            }
+        }
+    }
+
+    public void finish() {
+        if (state == State.CHAR_REFERENCE) {
+            emitCharReference(false);
+        }
+        state = State.TEXT;
+    }
+
+    private void startTag(boolean endTag) {
+        this.endTag = endTag;
+        this.tagName.setLength(0);
+        this.href = null;
+        this.state = State.TAG_NAME;
+    }
+
+    private void emitTag() {
+        rawTextTag = null;
+        if (!endTag) {
+            if (href != null && "a".contentEquals(tagName)) {
+                handler.onLink(href);
+            } else if (href != null && !baseSeen && "base".contentEquals(tagName)) {
+                baseSeen = true;
+                handler.onBase(href);
+            }
+            rawTextTag = find(RAW_TEXT_TAGS, tagName);
+        }
+        if (find(INLINE_TAGS, tagName) == null) {
+            handler.onText(SPACE, 0, 1);
+        }
+        href = null;
+        if (rawTextTag != null) {
+            rawTextMatched = 0;
+            state = State.RAW_TEXT;
+        } else {
+            state = State.TEXT;
+        }
+    }
+
+    private void startAttributeValue() {
+        attributeValue.setLength(0);
+        valueOverflow = false;
+        capturingValue = !endTag && "href".contentEquals(attributeName)
+                && ("a".contentEquals(tagName) || "base".contentEquals(tagName));
+    }
+
+    private void finishAttributeValue() {
+        if (capturingValue && !valueOverflow) {
+            href = decodeCharReferences(attributeValue).trim();
+        }
+        capturingValue = false;
+    }
+
+    private void matchRawTextEnd(char c) {
+        String tag = rawTextTag;
+        char expected;
+        if (rawTextMatched == 0) {
+            expected = '<';
+        } else if (rawTextMatched == 1) {
+            expected = '/';
+        } else {
+            expected = tag.charAt(rawTextMatched - 2);
+        }
+        if (toLowerAscii(c) == expected) {
+            rawTextMatched++;
+            if (rawTextMatched == tag.length() + 2) {
+                startTag(true);
+                tagName.append(tag);
+                state = State.BEFORE_ATTRIBUTE_NAME;
+            }
+        } else {
+            rawTextMatched = c == '<' ? 1 : 0;
+        }
+    }
+
+    private void emitCharReference(boolean terminated) {
+        int length = decodeCharReference(charReference, charReferenceValue);
+        if (length > 0) {
+            handler.onText(charReferenceValue, 0, length);
+            return;
+        }
+        StringBuilder raw = new StringBuilder(charReference.length() + 2).append('&').append(charReference);
+        if (terminated) {
+            raw.append(';');
+        }
+        char[] chars = raw.toString().toCharArray();
+        handler.onText(chars, 0, chars.length);
+    }
+
+    static String decodeCharReferences(CharSequence value) {
+        StringBuilder result = null;
+        char[] decoded = new char[2];
+        int length = value.length();
+        int i = 0;
+        while (i < length) {
+            char c = value.charAt(i);
+            if (c != '&') {
+                if (result != null) {
+                    result.append(c);
+                }
+                i++;
+                continue;
+            }
+            int end = i + 1;
+            while (end < length && end - i <= MAX_CHAR_REFERENCE_LENGTH
+                    && (isAsciiLetterOrDigit(value.charAt(end)) || (end == i + 1 && value.charAt(end) == '#'))) {
+                end++;
+            }
+            int decodedLength = decodeCharReference(value.subSequence(i + 1, end), decoded);
+            if (decodedLength == 0) {
+                if (result != null) {
+                    result.append(c);
+                }
+                i++;
+                continue;
+            }
+            if (result == null) {
+                result = new StringBuilder(length).append(value, 0, i);
+            }
+            result.append(decoded, 0, decodedLength);
+            i = end < length && value.charAt(end) == ';' ? end + 1 : end;
+        }
+        return result == null ? value.toString() : result.toString();
+    }
+
+    private static int decodeCharReference(CharSequence name, char[] target) {
+        if (name.length() == 0) {
+            return 0;
+        }
+        if (name.charAt(0) != '#') {
+            Character c = NAMED_CHAR_REFERENCES.get(name.toString());
+            if (c == null) {
+                return 0;
+            }
+            target[0] = c;
+            return 1;
+        }
+        try {
+            int codePoint;
+            if (name.length() > 1 && (name.charAt(1) == 'x' || name.charAt(1) == 'X')) {
+                codePoint = Integer.parseInt(name.subSequence(2, name.length()).toString(), 16);
+            } else {
+                codePoint = Integer.parseInt(name.subSequence(1, name.length()).toString());
+            }
+            if (codePoint <= 0 || !Character.isValidCodePoint(codePoint)) {
+                codePoint = '\uFFFD';
+            }
+            return Character.toChars(codePoint, target, 0);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static Map<String, Character> namedCharReferences() {
+        ImmutableMap.Builder<String, Character> builder = ImmutableMap.<String, Character>builder()
+                .put("amp", '&')
+                .put("lt", '<')
+                .put("gt", '>')
+                .put("quot", '"')
+                .put("apos", '\'')
+                .put("ndash", '\u2013')
+                .put("mdash", '\u2014')
+                .put("lsquo", '\u2018')
+                .put("rsquo", '\u2019')
+                .put("ldquo", '\u201C')
+                .put("rdquo", '\u201D')
+                .put("bull", '\u2022')
+                .put("hellip", '\u2026')
+                .put("euro", '\u20AC')
+                .put("trade", '\u2122');
+        for (int i = 0; i < LATIN_1_CHAR_REFERENCES.length; i++) {
+            builder.put(LATIN_1_CHAR_REFERENCES[i], (char) ('\u00A0' + i));
+        }
+        return builder.build();
+    }
+
+    @Nullable
+    private static String find(String[] names, CharSequence name) {
+        for (String candidate : names) {
+            if (candidate.contentEquals(name)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f';
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isAsciiLetterOrDigit(char c) {
+        return isAsciiLetter(c) || (c >= '0' && c <= '9');
+    }
+
+    private static char toLowerAscii(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
@@ -0,0 +1,147 @@
+package com.httpcrawler.parser;
+
+import com.httpcrawler.repository.client.PageContentHandler;
+import org.apache.http.HttpResponse;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+public class PageDecoder implements PageContentHandler {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int CHARSET_PRESCAN_LENGTH = 1024;
+    private static final int BOM_LENGTH = 3;
+    private static final Pattern META_CHARSET =
+            Pattern.compile("<meta[^>]+charset\\s*=\\s*[\"']?\\s*([-\\w.:]+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern XML_ENCODING =
+            Pattern.compile("^\\s*<\\?xml[^>]+encoding\\s*=\\s*[\"']([-\\w.:]+)", Pattern.CASE_INSENSITIVE);
+    private static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+
+    private final HtmlTokenizer tokenizer;
+    private final ByteBuffer bytes;
+    private final CharBuffer chars;
+    @Nullable
+    private Charset declaredCharset;
+    @Nullable
+    private CharsetDecoder decoder;
+
+    public PageDecoder(HtmlTokenizer tokenizer) {
+        this.tokenizer = tokenizer;
+        this.bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        this.chars = CharBuffer.allocate(BUFFER_SIZE);
+    }
+
+    @Override
+    public void onResponse(HttpResponse response, @Nullable Charset charset) {
+        this.declaredCharset = charset;
+    }
+
+    @Override
+    public void onContent(ByteBuffer content) {
+        while (content.hasRemaining()) {
+            int length = Math.min(content.remaining(), bytes.remaining());
+            ByteBuffer slice = content.duplicate();
+            slice.limit(slice.position() + length);
+            bytes.put(slice);
+            content.position(content.position() + length);
+            if (decoder == null) {
+                if (bytes.position() < (declaredCharset == null ? CHARSET_PRESCAN_LENGTH : BOM_LENGTH)) {
+                    continue;
+                }
+                decoder = newDecoder(detectCharset());
+            }
+            decode(false);
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        if (decoder == null) {
+            decoder = newDecoder(detectCharset());
+        }
+        decode(true);
+        decoder.flush(chars);
+        flushChars();
+        tokenizer.finish();
+    }
+
+    private void decode(boolean endOfInput) {
+        bytes.flip();
+        CoderResult result;
+        do {
+            result = decoder.decode(bytes, chars, endOfInput);
+            flushChars();
+        } while (result.isOverflow());
+        bytes.compact();
+    }
+
+    private void flushChars() {
+        chars.flip();
+        if (chars.hasRemaining()) {
+            tokenizer.feed(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+        }
+        chars.clear();
+    }
+
+    /**
+     * Picks the charset the way browsers do: a byte order mark, then the {@code Content-Type} header, then a
+     * {@code <meta>} or XML declaration in the first kilobyte, then UTF-8. Latin-1 and ASCII labels mean
+     * windows-1252, which is what pages labelled so are actually written in.
+     */
+    private Charset detectCharset() {
+        byte[] head = bytes.array();
+        int length = Math.min(bytes.position(), CHARSET_PRESCAN_LENGTH);
+        if (length >= 3 && head[0] == (byte) 0xEF && head[1] == (byte) 0xBB && head[2] == (byte) 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+        if (length >= 2 && head[0] == (byte) 0xFE && head[1] == (byte) 0xFF) {
+            return StandardCharsets.UTF_16BE;
+        }
+        if (length >= 2 && head[0] == (byte) 0xFF && head[1] == (byte) 0xFE) {
+            return StandardCharsets.UTF_16LE;
+        }
+        if (declaredCharset != null) {
+            return legacyCompatible(declaredCharset);
+        }
+        String prescan = new String(head, 0, length, StandardCharsets.ISO_8859_1);
+        Matcher matcher = META_CHARSET.matcher(prescan);
+        if (!matcher.find()) {
+            matcher = XML_ENCODING.matcher(prescan);
+            if (!matcher.find()) {
+                return StandardCharsets.UTF_8;
+            }
+        }
+        try {
+            Charset charset = Charset.forName(matcher.group(1));
+            // the bytes were readable as ASCII, so a UTF-16 label cannot be right
+            return charset.name().startsWith("UTF-16") ? StandardCharsets.UTF_8 : legacyCompatible(charset);
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    private static Charset legacyCompatible(Charset charset) {
+        if (charset.equals(StandardCharsets.ISO_8859_1) || charset.equals(StandardCharsets.US_ASCII)) {
+            return WINDOWS_1252;
+        }
+        return charset;
+    }
+
+    private static CharsetDecoder newDecoder(Charset charset) {
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+}
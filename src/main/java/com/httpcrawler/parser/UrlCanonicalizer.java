@@ -0,0 +1,487 @@
+package com.httpcrawler.parser;
+
+import com.httpcrawler.data.LinkScope;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+import java.net.IDN;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Resolves hrefs against the URL of the page they were found on and brings the result to one canonical
+ * form, so that spellings of the same URL share a fingerprint. The scheme and host are lower-cased, the
+ * default port, user info and fragment are dropped, dot segments are removed, percent-escapes of unreserved
+ * characters are decoded and other escapes upper-cased, characters that are not allowed in a URL are
+ * escaped, and query parameters named in the ignore list are removed. Only http and https URLs are kept.
+ * <p>
+ * The URL is parsed by hand in one pass over its characters: malformed input yields {@code null} rather
+ * than an exception, and a canonical URL costs a builder and the resulting string.
+ */
+@Immutable
+@ParametersAreNonnullByDefault
+public class UrlCanonicalizer {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final String WWW = "www.";
+
+    private final LinkScope scope;
+    private final String[] ignoredParams;
+    private final String[] ignoredParamPrefixes;
+
+    /**
+     * @param ignoredQueryParams names of query parameters to drop; a trailing {@code *} matches any suffix
+     */
+    public UrlCanonicalizer(LinkScope scope, Collection<String> ignoredQueryParams) {
+        List<String> names = new ArrayList<>();
+        List<String> prefixes = new ArrayList<>();
+        for (String param : ignoredQueryParams) {
+            param = param.trim();
+            if (param.endsWith("*")) {
+                prefixes.add(param.substring(0, param.length() - 1));
+            } else if (!param.isEmpty()) {
+                names.add(param);
+            }
+        }
+        this.scope = scope;
+        this.ignoredParams = names.toArray(new String[0]);
+        this.ignoredParamPrefixes = prefixes.toArray(new String[0]);
+    }
+
+    @Nullable
+    public String canonicalize(String url) {
+        return resolve(null, url);
+    }
+
+    /**
+     * @param base canonical URL of the page, as returned by this class
+     * @return the canonical absolute URL of {@code href}, or {@code null} if it is malformed or not http(s)
+     */
+    @Nullable
+    public String resolve(@Nullable String base, String href) {
+        href = stripTabsAndNewlines(href);
+        int length = href.length();
+        int fragment = indexOf(href, '#', 0, length);
+        int end = fragment < 0 ? length : fragment;
+        int schemeEnd = schemeEnd(href, end);
+        int position = schemeEnd < 0 ? 0 : schemeEnd + 1;
+        if (schemeEnd >= 0 && !isHttp(href, schemeEnd)) {
+            return null;
+        }
+        boolean hasAuthority = startsWithSlashes(href, position, end);
+        if (base == null && (schemeEnd < 0 || !hasAuthority)) {
+            return null;
+        }
+        if (schemeEnd >= 0 && !hasAuthority) {
+            if (base == null || !base.regionMatches(true, 0, href, 0, schemeEnd + 1)) {
+                return null;
+            }
+        }
+
+        StringBuilder out = new StringBuilder(length + (base == null ? 0 : base.length()));
+        int pathStart;
+        if (hasAuthority) {
+            if (schemeEnd >= 0) {
+                appendLowerCase(out, href, 0, schemeEnd);
+            } else {
+                out.append(base, 0, base.indexOf(':'));
+            }
+            out.append("://");
+            int authorityStart = position + 2;
+            int authorityEnd = authorityStart;
+            while (authorityEnd < end && !isPathEnd(href.charAt(authorityEnd))) {
+                authorityEnd++;
+            }
+            if (!appendAuthority(out, href, authorityStart, authorityEnd, out.charAt(4) == 's')) {
+                return null;
+            }
+            pathStart = authorityEnd;
+        } else {
+            out.append(base, 0, authorityEnd(base));
+            pathStart = position;
+        }
+
+        int queryStart = indexOf(href, '?', pathStart, end);
+        int pathEnd = queryStart < 0 ? end : queryStart;
+        if (pathStart == pathEnd && !hasAuthority) {
+            int baseQuery = base.indexOf('?');
+            out.append(base, authorityEnd(base), baseQuery < 0 ? base.length() : baseQuery);
+            if (queryStart < 0) {
+                if (baseQuery >= 0) {
+                    out.append(base, baseQuery, base.length());
+                }
+                return out.toString();
+            }
+        } else {
+            StringBuilder path = new StringBuilder(pathEnd - pathStart + (base == null ? 0 : base.length()));
+            if (pathStart < pathEnd && !isSlash(href.charAt(pathStart))) {
+                if (hasAuthority) {
+                    path.append('/');
+                } else {
+                    int basePathStart = authorityEnd(base);
+                    int basePathEnd = base.indexOf('?');
+                    basePathEnd = base.lastIndexOf('/', basePathEnd < 0 ? base.length() : basePathEnd);
+                    path.append(base, basePathStart, basePathEnd + 1);
+                }
+            }
+            appendEscaped(path, href, pathStart, pathEnd, true);
+            appendPath(out, path);
+        }
+        if (queryStart >= 0) {
+            appendQuery(out, href, queryStart + 1, end);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Whether {@code url} belongs to the crawl of {@code rootUrl}; both must be canonical.
+     */
+    public boolean isInScope(String rootUrl, String url) {
+        switch (scope) {
+            case PREFIX:
+                return url.startsWith(rootUrl);
+            case HOST: {
+                int rootStart = rootUrl.indexOf("://") + 3;
+                int rootEnd = authorityEnd(rootUrl);
+                int start = url.indexOf("://") + 3;
+                int end = authorityEnd(url);
+                return rootEnd - rootStart == end - start
+                        && url.regionMatches(start, rootUrl, rootStart, end - start);
+            }
+            case DOMAIN: {
+                int rootStart = rootUrl.indexOf("://") + 3;
+                int rootEnd = hostEnd(rootUrl, rootStart);
+                if (rootUrl.startsWith(WWW, rootStart)) {
+                    rootStart += WWW.length();
+                }
+                int domainLength = rootEnd - rootStart;
+                int start = url.indexOf("://") + 3;
+                int end = hostEnd(url, start);
+                if (end - start == domainLength) {
+                    return url.regionMatches(start, rootUrl, rootStart, domainLength);
+                }
+                return end - start > domainLength
+                        && url.charAt(end - domainLength - 1) == '.'
+                        && url.regionMatches(end - domainLength, rootUrl, rootStart, domainLength);
+            }
+            default:
+                return true;
+        }
+    }
+
+    private static String stripTabsAndNewlines(String href) {
+        int length = href.length();
+        for (int i = 0; i < length; i++) {
+            char c = href.charAt(i);
+            if (c == '\t' || c == '\n' || c == '\r') {
+                StringBuilder stripped = new StringBuilder(length);
+                for (int j = 0; j < length; j++) {
+                    c = href.charAt(j);
+                    if (c != '\t' && c != '\n' && c != '\r') {
+                        stripped.append(c);
+                    }
+                }
+                return stripped.toString();
+            }
+        }
+        return href;
+    }
+
+    private static int schemeEnd(String href, int end) {
+        if (end == 0 || !isAsciiLetter(href.charAt(0))) {
+            return -1;
+        }
+        for (int i = 1; i < end; i++) {
+            char c = href.charAt(i);
+            if (c == ':') {
+                return i;
+            }
+            if (!isAsciiLetter(c) && !(c >= '0' && c <= '9') && c != '+' && c != '-' && c != '.') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isHttp(String href, int schemeEnd) {
+        return (schemeEnd == 4 && href.regionMatches(true, 0, "http", 0, 4))
+                || (schemeEnd == 5 && href.regionMatches(true, 0, "https", 0, 5));
+    }
+
+    private static boolean startsWithSlashes(String href, int position, int end) {
+        return position + 1 < end && isSlash(href.charAt(position)) && isSlash(href.charAt(position + 1));
+    }
+
+    /**
+     * Appends {@code host[:port]}, dropping user info and the default port of the scheme.
+     */
+    private static boolean appendAuthority(StringBuilder out, String href, int start, int end, boolean https) {
+        int at = href.lastIndexOf('@', end - 1);
+        if (at >= start) {
+            start = at + 1;
+        }
+        int hostEnd = end;
+        if (start < end && href.charAt(start) == '[') {
+            int close = indexOf(href, ']', start, end);
+            if (close < 0) {
+                return false;
+            }
+            hostEnd = close + 1;
+            appendLowerCase(out, href, start, hostEnd);
+        } else {
+            int colon = indexOf(href, ':', start, end);
+            if (colon >= 0) {
+                hostEnd = colon;
+            }
+            int hostLength = hostEnd;
+            while (hostLength > start && href.charAt(hostLength - 1) == '.') {
+                hostLength--;
+            }
+            if (hostLength == start || !appendHost(out, href, start, hostLength)) {
+                return false;
+            }
+        }
+        if (hostEnd < end) {
+            if (href.charAt(hostEnd) != ':') {
+                return false;
+            }
+            int port = 0;
+            for (int i = hostEnd + 1; i < end; i++) {
+                char c = href.charAt(i);
+                if (c < '0' || c > '9' || port > 65535) {
+                    return false;
+                }
+                port = port * 10 + (c - '0');
+            }
+            if (port > 65535) {
+                return false;
+            }
+            if (hostEnd + 1 < end && port != (https ? 443 : 80)) {
+                out.append(':').append(port);
+            }
+        }
+        return true;
+    }
+
+    private static boolean appendHost(StringBuilder out, String href, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = href.charAt(i);
+            if (c >= 0x80) {
+                String ascii;
+                try {
+                    ascii = IDN.toASCII(href.substring(start, end), IDN.ALLOW_UNASSIGNED);
+                } catch (IllegalArgumentException e) {
+                    return false;
+                }
+                return appendHost(out, ascii, 0, ascii.length());
+            }
+            if (!isAsciiLetter(c) && !(c >= '0' && c <= '9') && c != '-' && c != '.' && c != '_') {
+                return false;
+            }
+        }
+        appendLowerCase(out, href, start, end);
+        return true;
+    }
+
+    /**
+     * Appends {@code path}, which starts with a slash, with its {@code .} and {@code ..} segments removed.
+     */
+    private static void appendPath(StringBuilder out, CharSequence path) {
+        int start = out.length();
+        int length = path.length();
+        int i = 0;
+        while (i < length) {
+            int segmentStart = i + 1;
+            int segmentEnd = segmentStart;
+            while (segmentEnd < length && path.charAt(segmentEnd) != '/') {
+                segmentEnd++;
+            }
+            int segmentLength = segmentEnd - segmentStart;
+            boolean last = segmentEnd >= length;
+            if (segmentLength == 1 && path.charAt(segmentStart) == '.') {
+                if (last) {
+                    out.append('/');
+                }
+            } else if (segmentLength == 2 && path.charAt(segmentStart) == '.'
+                    && path.charAt(segmentStart + 1) == '.') {
+                int parent = out.lastIndexOf("/");
+                if (parent >= start) {
+                    out.setLength(parent);
+                }
+                if (last) {
+                    out.append('/');
+                }
+            } else {
+                out.append('/').append(path, segmentStart, segmentEnd);
+            }
+            i = segmentEnd;
+        }
+        if (out.length() == start) {
+            out.append('/');
+        }
+    }
+
+    private void appendQuery(StringBuilder out, String href, int start, int end) {
+        int queryStart = out.length();
+        out.append('?');
+        int parameter = start;
+        while (parameter <= end) {
+            int parameterEnd = indexOf(href, '&', parameter, end);
+            if (parameterEnd < 0) {
+                parameterEnd = end;
+            }
+            if (parameterEnd > parameter && !isIgnored(href, parameter, parameterEnd)) {
+                if (out.length() > queryStart + 1) {
+                    out.append('&');
+                }
+                appendEscaped(out, href, parameter, parameterEnd, false);
+            }
+            parameter = parameterEnd + 1;
+        }
+        if (out.length() == queryStart + 1) {
+            out.setLength(queryStart);
+        }
+    }
+
+    private boolean isIgnored(String href, int start, int end) {
+        int nameEnd = indexOf(href, '=', start, end);
+        int nameLength = (nameEnd < 0 ? end : nameEnd) - start;
+        for (String name : ignoredParams) {
+            if (name.length() == nameLength && href.regionMatches(start, name, 0, nameLength)) {
+                return true;
+            }
+        }
+        for (String prefix : ignoredParamPrefixes) {
+            if (prefix.length() <= nameLength && href.regionMatches(start, prefix, 0, prefix.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Appends a path or query, normalizing percent-escapes and escaping what may not appear in a URL. In a
+     * path a backslash is read as a slash, the way browsers do.
+     */
+    private static void appendEscaped(StringBuilder out, String href, int start, int end, boolean path) {
+        int i = start;
+        while (i < end) {
+            char c = href.charAt(i);
+            if (c == '%') {
+                if (i + 2 < end && hexValue(href.charAt(i + 1)) >= 0 && hexValue(href.charAt(i + 2)) >= 0) {
+                    int value = hexValue(href.charAt(i + 1)) << 4 | hexValue(href.charAt(i + 2));
+                    if (isUnreserved((char) value)) {
+                        out.append((char) value);
+                    } else {
+                        appendEscape(out, value);
+                    }
+                    i += 3;
+                } else {
+                    out.append("%25");
+                    i++;
+                }
+            } else if (path && c == '\\') {
+                out.append('/');
+                i++;
+            } else if (c < 0x80) {
+                if (c <= ' ' || c == 0x7F || c == '"' || c == '<' || c == '>' || c == '\\' || c == '^' || c == '`'
+                        || c == '{' || c == '|' || c == '}') {
+                    appendEscape(out, c);
+                } else {
+                    out.append(c);
+                }
+                i++;
+            } else {
+                int codePoint = href.codePointAt(i);
+                i += Character.charCount(codePoint);
+                if (Character.isSurrogate((char) codePoint) && codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                    codePoint = 0xFFFD;
+                }
+                appendUtf8Escapes(out, codePoint);
+            }
+        }
+    }
+
+    private static void appendUtf8Escapes(StringBuilder out, int codePoint) {
+        if (codePoint < 0x800) {
+            appendEscape(out, 0xC0 | codePoint >>> 6);
+        } else {
+            if (codePoint < 0x10000) {
+                appendEscape(out, 0xE0 | codePoint >>> 12);
+            } else {
+                appendEscape(out, 0xF0 | codePoint >>> 18);
+                appendEscape(out, 0x80 | (codePoint >>> 12 & 0x3F));
+            }
+            appendEscape(out, 0x80 | (codePoint >>> 6 & 0x3F));
+        }
+        appendEscape(out, 0x80 | (codePoint & 0x3F));
+    }
+
+    private static void appendEscape(StringBuilder out, int value) {
+        out.append('%').append(HEX[value >>> 4]).append(HEX[value & 0xF]);
+    }
+
+    private static void appendLowerCase(StringBuilder out, String value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            out.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+        }
+    }
+
+    /**
+     * @return the end of {@code scheme://host[:port]} in a canonical URL
+     */
+    private static int authorityEnd(String url) {
+        int end = url.indexOf('/', url.indexOf("://") + 3);
+        return end < 0 ? url.length() : end;
+    }
+
+    private static int hostEnd(String url, int start) {
+        int end = authorityEnd(url);
+        if (url.charAt(start) == '[') {
+            return end;
+        }
+        int colon = indexOf(url, ':', start, end);
+        return colon < 0 ? end : colon;
+    }
+
+    private static int indexOf(String value, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (value.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+
+    private static boolean isPathEnd(char c) {
+        return c == '/' || c == '\\' || c == '?';
+    }
+
+    private static boolean isSlash(char c) {
+        return c == '/' || c == '\\';
+    }
+
+    private static boolean isUnreserved(char c) {
+        return isAsciiLetter(c) || (c >= '0' && c <= '9') || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
@@ -0,0 +1,100 @@
+package com.httpcrawler.parser;
+
+import com.httpcrawler.data.WordCountTable;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Splits text into words of Latin, Cyrillic ({@code А-Я}, {@code а-я}) and Swedish ({@code ÅÄÖåäö}) letters
+ * and counts them into a {@link WordCountTable}. Text may arrive in arbitrary chunks; words that end inside
+ * a chunk and need no folding are counted straight from the caller's buffer.
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+public class WordTokenizer {
+
+    private static final int MAX_WORD_LENGTH = 1024;
+
+    private final WordCountTable table;
+    private final boolean caseFolding;
+    private final char[] word;
+    private int wordLength;
+    private boolean overflow;
+
+    public WordTokenizer(WordCountTable table, boolean caseFolding) {
+        this.table = table;
+        this.caseFolding = caseFolding;
+        this.word = new char[MAX_WORD_LENGTH];
+    }
+
+    public void append(char[] chars, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            if (!isWordChar(chars[i])) {
+                flushWord();
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < end && isWordChar(chars[i])) {
+                i++;
+            }
+            if (i < end && wordLength == 0 && !overflow && !caseFolding) {
+                if (i - start <= MAX_WORD_LENGTH) {
+                    table.add(chars, start, i - start);
+                }
+            } else {
+                bufferWord(chars, start, i);
+                if (i < end) {
+                    flushWord();
+                }
+            }
+        }
+    }
+
+    public void finish() {
+        flushWord();
+    }
+
+    public static boolean isWordChar(char c) {
+        if (c < 0x80) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+        }
+        return (c >= 'А' && c <= 'я')
+                || c == 'Å' || c == 'Ä' || c == 'Ö'
+                || c == 'å' || c == 'ä' || c == 'ö';
+    }
+
+    public static char foldCase(char c) {
+        if ((c >= 'A' && c <= 'Z') || (c >= 'А' && c <= 'Я')
+                || c == 'Å' || c == 'Ä' || c == 'Ö') {
+            return (char) (c + 0x20);
+        }
+        return c;
+    }
+
+    private void bufferWord(char[] chars, int start, int end) {
+        if (overflow || wordLength + end - start > MAX_WORD_LENGTH) {
+            overflow = true;
+            return;
+        }
+        if (caseFolding) {
+            for (int i = start; i < end; i++) {
+                word[wordLength++] = foldCase(chars[i]);
+            }
+        } else {
+            System.arraycopy(chars, start, word, wordLength, end - start);
+            wordLength += end - start;
+        }
+    }
+
+    private void flushWord() {
+        if (wordLength > 0 && !overflow) {
+            table.add(word, 0, wordLength);
+        }
+        wordLength = 0;
+        overflow = false;
+    }
+}
@@ -0,0 +1,26 @@
+package com.httpcrawler.repository.client;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+import java.nio.charset.Charset;
+
+@Immutable
+@ParametersAreNonnullByDefault
+class CachedPage {
+
+    @Nullable
+    final String etag;
+    @Nullable
+    final String lastModified;
+    @Nullable
+    final Charset charset;
+    final byte[] body;
+
+    CachedPage(@Nullable String etag, @Nullable String lastModified, @Nullable Charset charset, byte[] body) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.charset = charset;
+        this.body = body;
+    }
+}
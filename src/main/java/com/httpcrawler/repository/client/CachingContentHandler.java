@@ -0,0 +1,109 @@
+package com.httpcrawler.repository.client;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Replays the cached body on {@code 304 Not Modified} and records cacheable bodies on {@code 200 OK}.
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+class CachingContentHandler implements PageContentHandler {
+
+    private final String url;
+    private final PageContentHandler delegate;
+    private final PageCache pageCache;
+    @Nullable
+    private final CachedPage cached;
+    @Nullable
+    private String etag;
+    @Nullable
+    private String lastModified;
+    @Nullable
+    private Charset charset;
+    @Nullable
+    private byte[] body;
+    private int bodyLength;
+    private boolean notModified;
+
+    CachingContentHandler(String url, PageContentHandler delegate, PageCache pageCache, @Nullable CachedPage cached) {
+        this.url = url;
+        this.delegate = delegate;
+        this.pageCache = pageCache;
+        this.cached = cached;
+    }
+
+    @Override
+    public void onResponse(HttpResponse response, @Nullable Charset charset) throws IOException {
+        int status = response.getStatusLine().getStatusCode();
+        if (status == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+            notModified = true;
+            delegate.onResponse(response, charset != null ? charset : cached.charset);
+            return;
+        }
+        if (status == HttpStatus.SC_OK) {
+            this.etag = headerValue(response, HttpHeaders.ETAG);
+            this.lastModified = headerValue(response, HttpHeaders.LAST_MODIFIED);
+            this.charset = charset;
+            if (etag != null || lastModified != null) {
+                this.body = new byte[Math.min(8 * 1024, pageCache.maxPageBytes())];
+            }
+        }
+        if (body == null && cached != null) {
+            pageCache.invalidate(url);
+        }
+        delegate.onResponse(response, charset);
+    }
+
+    @Override
+    public void onContent(ByteBuffer content) throws IOException {
+        if (notModified) {
+            return;
+        }
+        if (body != null) {
+            record(content);
+        }
+        delegate.onContent(content);
+    }
+
+    @Override
+    public void onComplete() throws IOException {
+        if (notModified && cached != null) {
+            delegate.onContent(ByteBuffer.wrap(cached.body));
+        } else if (body != null) {
+            pageCache.put(url, new CachedPage(etag, lastModified, charset, Arrays.copyOf(body, bodyLength)));
+        }
+        delegate.onComplete();
+    }
+
+    private void record(ByteBuffer content) {
+        int length = content.remaining();
+        if (bodyLength + length > pageCache.maxPageBytes()) {
+            body = null;
+            pageCache.invalidate(url);
+            return;
+        }
+        if (bodyLength + length > body.length) {
+            body = Arrays.copyOf(body, Math.min(Math.max(body.length * 2, bodyLength + length),
+                    pageCache.maxPageBytes()));
+        }
+        content.duplicate().get(body, bodyLength, length);
+        bodyLength += length;
+    }
+
+    @Nullable
+    private static String headerValue(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+}
@@ -0,0 +1,212 @@
+package com.httpcrawler.repository.client;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Inflates {@code gzip} and {@code deflate} bodies chunk by chunk before they reach the delegate, which sees
+ * the response without {@code Content-Encoding} and {@code Content-Length}. The inflated length is checked
+ * against the {@link FetchPolicy} as well, so a small compressed body cannot expand without bound.
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+class DecompressingContentHandler implements PageContentHandler {
+
+    static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_GZIP_HEADER_LENGTH = 64 * 1024;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private enum Encoding {
+        GZIP,
+        DEFLATE
+    }
+
+    private final PageContentHandler delegate;
+    private final FetchPolicy policy;
+    @Nullable
+    private Encoding encoding;
+    @Nullable
+    private Inflater inflater;
+    @Nullable
+    private ByteBuffer output;
+    @Nullable
+    private byte[] header;
+    private int headerLength;
+    private long inflatedLength;
+
+    DecompressingContentHandler(PageContentHandler delegate, FetchPolicy policy) {
+        this.delegate = delegate;
+        this.policy = policy;
+    }
+
+    @Override
+    public void onResponse(HttpResponse response, @Nullable Charset charset) throws IOException {
+        Header contentEncoding = response.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+        String value = contentEncoding == null ? "" : contentEncoding.getValue().trim().toLowerCase(Locale.ROOT);
+        switch (value) {
+            case "":
+            case "identity":
+                break;
+            case "gzip":
+            case "x-gzip":
+                encoding = Encoding.GZIP;
+                header = new byte[512];
+                break;
+            case "deflate":
+                encoding = Encoding.DEFLATE;
+                header = new byte[2];
+                break;
+            default:
+                throw new IOException("Unsupported content encoding " + contentEncoding.getValue());
+        }
+        if (encoding != null) {
+            output = ByteBuffer.allocate(BUFFER_SIZE);
+            response.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+            response.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+            response.removeHeaders("Content-MD5");
+        }
+        delegate.onResponse(response, charset);
+    }
+
+    @Override
+    public void onContent(ByteBuffer content) throws IOException {
+        if (encoding == null) {
+            delegate.onContent(content);
+            return;
+        }
+        if (inflater == null) {
+            content = readHeader(content);
+            if (content == null) {
+                return;
+            }
+        }
+        if (inflater.finished() || !content.hasRemaining()) {
+            return;
+        }
+        inflater.setInput(content);
+        inflate();
+    }
+
+    @Override
+    public void onComplete() throws IOException {
+        try {
+            // an empty body, as of a 304, is not compressed data
+            if (encoding != null && (inflater != null ? !inflater.finished() : headerLength > 0)) {
+                throw new IOException("Truncated " + encoding.name().toLowerCase(Locale.ROOT) + " body");
+            }
+            delegate.onComplete();
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * Buffers the bytes in front of the compressed data until the inflater can be created.
+     *
+     * @return the rest of {@code content}, or {@code null} while more bytes are needed
+     */
+    @Nullable
+    private ByteBuffer readHeader(ByteBuffer content) throws IOException {
+        while (content.hasRemaining()) {
+            if (headerLength == header.length) {
+                if (header.length >= MAX_GZIP_HEADER_LENGTH) {
+                    throw new IOException("Gzip header is longer than " + MAX_GZIP_HEADER_LENGTH + " bytes");
+                }
+                header = Arrays.copyOf(header, header.length * 2);
+            }
+            header[headerLength++] = content.get();
+            if (encoding == Encoding.GZIP) {
+                if (gzipHeaderLength(header, headerLength) < 0) {
+                    continue;
+                }
+                inflater = new Inflater(true);
+            } else {
+                if (headerLength < 2) {
+                    continue;
+                }
+                // servers send both zlib-wrapped and raw deflate; a zlib stream starts with CM = 8 and a check value
+                boolean zlib = (header[0] & 0x0F) == 8 && (((header[0] & 0xFF) << 8) | (header[1] & 0xFF)) % 31 == 0;
+                inflater = new Inflater(!zlib);
+                inflater.setInput(header, 0, headerLength);
+                inflate();
+            }
+            header = null;
+            return content;
+        }
+        return null;
+    }
+
+    private void inflate() throws IOException {
+        try {
+            while (!inflater.finished()) {
+                int length = inflater.inflate(output);
+                if (length == 0) {
+                    if (inflater.needsInput() || inflater.needsDictionary()) {
+                        return;
+                    }
+                    continue;
+                }
+                inflatedLength += length;
+                policy.checkBodyLength(inflatedLength);
+                output.flip();
+                delegate.onContent(output);
+                output.clear();
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Malformed " + encoding.name().toLowerCase(Locale.ROOT) + " body", e);
+        }
+    }
+
+    /**
+     * @return the length of a complete gzip header, or {@code -1} if more bytes are needed
+     */
+    private static int gzipHeaderLength(byte[] header, int length) throws IOException {
+        if (length < 10) {
+            return -1;
+        }
+        if ((header[0] & 0xFF) != 0x1F || (header[1] & 0xFF) != 0x8B || header[2] != 8) {
+            throw new IOException("Not a gzip body");
+        }
+        int flags = header[3] & 0xFF;
+        int offset = 10;
+        if ((flags & FEXTRA) != 0) {
+            if (length < offset + 2) {
+                return -1;
+            }
+            offset += 2 + ((header[offset] & 0xFF) | (header[offset + 1] & 0xFF) << 8);
+        }
+        for (int field : new int[]{FNAME, FCOMMENT}) {
+            if ((flags & field) != 0) {
+                while (offset < length && header[offset] != 0) {
+                    offset++;
+                }
+                if (offset++ >= length) {
+                    return -1;
+                }
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            offset += 2;
+        }
+        return offset <= length ? offset : -1;
+    }
+}
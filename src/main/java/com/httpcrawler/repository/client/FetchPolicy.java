@@ -0,0 +1,73 @@
+package com.httpcrawler.repository.client;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.ParseException;
+import org.apache.http.entity.ContentType;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Decides from the response headers whether a body is worth reading: only 2xx and 304 responses of an
+ * allowed content type and no longer than {@code maxBodyBytes}. Responses without a {@code Content-Type}
+ * are read; an empty allowlist accepts every type.
+ */
+@Immutable
+@ParametersAreNonnullByDefault
+class FetchPolicy {
+
+    private final long maxBodyBytes;
+    private final Set<String> allowedContentTypes;
+
+    FetchPolicy(long maxBodyBytes, Collection<String> allowedContentTypes) {
+        this.maxBodyBytes = maxBodyBytes;
+        this.allowedContentTypes = new HashSet<>();
+        for (String contentType : allowedContentTypes) {
+            if (!contentType.trim().isEmpty()) {
+                this.allowedContentTypes.add(contentType.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+    }
+
+    void checkResponse(HttpResponse response) throws RejectedPageException {
+        int status = response.getStatusLine().getStatusCode();
+        if (status / 100 != 2 && status != HttpStatus.SC_NOT_MODIFIED) {
+            throw new RejectedPageException(RejectedPageException.Reason.STATUS, "Status " + status);
+        }
+        Header contentType = response.getFirstHeader(HttpHeaders.CONTENT_TYPE);
+        if (contentType != null && !allowedContentTypes.isEmpty()) {
+            String mimeType;
+            try {
+                mimeType = ContentType.parse(contentType.getValue()).getMimeType().toLowerCase(Locale.ROOT);
+            } catch (ParseException | IllegalArgumentException e) {
+                mimeType = contentType.getValue();
+            }
+            if (!allowedContentTypes.contains(mimeType)) {
+                throw new RejectedPageException(RejectedPageException.Reason.CONTENT_TYPE,
+                        "Content type " + contentType.getValue());
+            }
+        }
+        Header contentLength = response.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+        if (contentLength != null) {
+            try {
+                checkBodyLength(Long.parseLong(contentLength.getValue().trim()));
+            } catch (NumberFormatException e) {
+                // a broken length is caught while reading
+            }
+        }
+    }
+
+    void checkBodyLength(long bytes) throws RejectedPageException {
+        if (bytes > maxBodyBytes) {
+            throw new RejectedPageException(RejectedPageException.Reason.TOO_LARGE,
+                    "Body is longer than " + maxBodyBytes + " bytes");
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.httpcrawler.repository.client;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests waiting for one host. A request starts when the host has a free slot, the token bucket has a token
+ * and the host is not paused; otherwise a single wakeup is scheduled for when the next token is due.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+class HostQueue {
+
+    private final int maxInFlight;
+    private final double requestsPerSecond;
+    private final ScheduledExecutorService scheduler;
+    private final Queue<Runnable> waiting;
+    private final TokenBucket tokens;
+    private int inFlight;
+    private boolean ready;
+    private boolean wakeupScheduled;
+    private long pausedUntilNanos;
+    private long lastActiveNanos;
+
+    HostQueue(int maxInFlight, double requestsPerSecond, int burst, boolean ready, ScheduledExecutorService scheduler) {
+        long now = System.nanoTime();
+        this.maxInFlight = maxInFlight;
+        this.requestsPerSecond = requestsPerSecond;
+        this.scheduler = scheduler;
+        this.waiting = new ArrayDeque<>();
+        this.tokens = new TokenBucket(requestsPerSecond, burst, now);
+        this.ready = ready;
+        this.pausedUntilNanos = now;
+        this.lastActiveNanos = now;
+    }
+
+    synchronized void add(Runnable task) {
+        waiting.add(task);
+    }
+
+    void release() {
+        synchronized (this) {
+            inFlight--;
+            lastActiveNanos = System.nanoTime();
+        }
+        drain();
+    }
+
+    void setCrawlDelay(double crawlDelaySeconds) {
+        synchronized (this) {
+            if (crawlDelaySeconds > 0) {
+                double rate = 1 / crawlDelaySeconds;
+                tokens.configure(requestsPerSecond > 0 ? Math.min(requestsPerSecond, rate) : rate, 1);
+            }
+            ready = true;
+        }
+        drain();
+    }
+
+    synchronized void pause(long millis) {
+        pausedUntilNanos = Math.max(pausedUntilNanos, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    synchronized boolean isIdleSince(long nanos) {
+        return waiting.isEmpty() && inFlight == 0 && !wakeupScheduled && lastActiveNanos - nanos < 0;
+    }
+
+    synchronized int waitingCount() {
+        return waiting.size();
+    }
+
+    void drain() {
+        while (true) {
+            Runnable task;
+            synchronized (this) {
+                if (!ready || wakeupScheduled || waiting.isEmpty() || inFlight >= maxInFlight) {
+                    return;
+                }
+                long now = System.nanoTime();
+                long delay = pausedUntilNanos - now;
+                if (delay <= 0) {
+                    delay = tokens.tryTake(now);
+                }
+                if (delay > 0) {
+                    wakeupScheduled = true;
+                    scheduler.schedule(this::wakeup, delay, TimeUnit.NANOSECONDS);
+                    return;
+                }
+                task = waiting.poll();
+                inFlight++;
+                lastActiveNanos = now;
+            }
+            task.run();
+        }
+    }
+
+    private void wakeup() {
+        synchronized (this) {
+            wakeupScheduled = false;
+        }
+        drain();
+    }
+}
@@ -0,0 +1,97 @@
+package com.httpcrawler.repository.client;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.net.URI;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+@ThreadSafe
+@ParametersAreNonnullByDefault
+class HostScheduler {
+
+    private final ConcurrentMap<String, HostQueue> hosts;
+    private final int maxInFlightPerHost;
+    private final double requestsPerSecond;
+    private final int burst;
+    @Nullable
+    private final Function<String, CompletableFuture<Double>> crawlDelayLoader;
+    private final ScheduledExecutorService scheduler;
+
+    HostScheduler(int maxInFlightPerHost, double requestsPerSecond, int burst,
+                  @Nullable Function<String, CompletableFuture<Double>> crawlDelayLoader,
+                  ScheduledExecutorService scheduler) {
+        this.hosts = new ConcurrentHashMap<>();
+        this.maxInFlightPerHost = maxInFlightPerHost;
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = burst;
+        this.crawlDelayLoader = crawlDelayLoader;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @return scheme, host and port of {@code url}, or an empty string if it has none.
+     */
+    static String hostKey(String url) {
+        try {
+            URI uri = URI.create(url);
+            if (uri.getScheme() == null || uri.getHost() == null) {
+                return "";
+            }
+            String key = uri.getScheme().toLowerCase(Locale.ROOT) + "://" + uri.getHost().toLowerCase(Locale.ROOT);
+            return uri.getPort() == -1 ? key : key + ":" + uri.getPort();
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+
+    void submit(String host, Runnable task) {
+        boolean[] created = new boolean[1];
+        HostQueue queue = hosts.compute(host, (key, existing) -> {
+            HostQueue current = existing;
+            if (current == null) {
+                current = new HostQueue(maxInFlightPerHost, requestsPerSecond, burst,
+                        crawlDelayLoader == null || host.isEmpty(), scheduler);
+                created[0] = true;
+            }
+            current.add(task);
+            return current;
+        });
+        if (created[0] && crawlDelayLoader != null && !host.isEmpty()) {
+            crawlDelayLoader.apply(host).whenComplete((delay, e) -> queue.setCrawlDelay(delay == null ? 0 : delay));
+        } else {
+            queue.drain();
+        }
+    }
+
+    void release(String host) {
+        HostQueue queue = hosts.get(host);
+        if (queue != null) {
+            queue.release();
+        }
+    }
+
+    void pause(String host, long millis) {
+        HostQueue queue = hosts.get(host);
+        if (queue != null) {
+            queue.pause(millis);
+        }
+    }
+
+    int hostCount() {
+        return hosts.size();
+    }
+
+    void evictIdle(long idleMillis) {
+        long idleSince = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        for (String host : hosts.keySet()) {
+            hosts.computeIfPresent(host, (key, queue) -> queue.isIdleSince(idleSince) ? null : queue);
+        }
+    }
+}
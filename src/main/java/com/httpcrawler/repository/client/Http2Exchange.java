@@ -0,0 +1,217 @@
+package com.httpcrawler.repository.client;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.protocol.BasicHttpContext;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Feeds an exchange of the JDK {@link HttpClient}, which speaks HTTP/2, into a {@link StreamingResponseConsumer}.
+ * The consumer reads the body through this {@link ContentDecoder} and throttles it through this
+ * {@link IOControl}: the next buffers are requested only once the previous ones are read, so a suspended
+ * consumer holds back its stream without holding back the others multiplexed on the connection.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+class Http2Exchange implements java.net.http.HttpResponse.BodyHandler<HttpResponse>,
+        java.net.http.HttpResponse.BodySubscriber<HttpResponse>, ContentDecoder, IOControl {
+
+    private static final HttpVersion HTTP_2 = new HttpVersion(2, 0);
+
+    private final StreamingResponseConsumer consumer;
+    private final CompletableFuture<HttpResponse> body;
+    private List<ByteBuffer> pending;
+    private int pendingIndex;
+    private boolean suspended;
+    private boolean complete;
+    private boolean pumping;
+    private boolean awaiting;
+    private volatile boolean done;
+    @Nullable
+    private volatile Flow.Subscription subscription;
+    @Nullable
+    private volatile Exception failure;
+
+    Http2Exchange(StreamingResponseConsumer consumer) {
+        this.consumer = consumer;
+        this.body = new CompletableFuture<>();
+        this.pending = Collections.emptyList();
+    }
+
+    @Override
+    public java.net.http.HttpResponse.BodySubscriber<HttpResponse> apply(
+            java.net.http.HttpResponse.ResponseInfo info) {
+        HttpResponse response = new BasicHttpResponse(new BasicStatusLine(
+                info.version() == HttpClient.Version.HTTP_2 ? HTTP_2 : HttpVersion.HTTP_1_1, info.statusCode(), ""));
+        info.headers().map().forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+        try {
+            consumer.responseReceived(response);
+        } catch (IOException | HttpException | RuntimeException e) {
+            failure = e;
+            consumer.failed(e);
+        }
+        return this;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        Exception e = failure;
+        if (e != null) {
+            done = true;
+            subscription.cancel();
+            body.completeExceptionally(e);
+        } else {
+            synchronized (this) {
+                awaiting = true;
+            }
+            subscription.request(1);
+        }
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> buffers) {
+        synchronized (this) {
+            pending = buffers;
+            pendingIndex = 0;
+            awaiting = false;
+        }
+        pump();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        Exception e = throwable instanceof Exception ? (Exception) throwable : new IOException(throwable);
+        done = true;
+        consumer.failed(e);
+        body.completeExceptionally(e);
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (this) {
+            complete = true;
+        }
+        pump();
+    }
+
+    @Override
+    public CompletionStage<HttpResponse> getBody() {
+        return body;
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) {
+        int read = 0;
+        while (dst.hasRemaining() && pendingIndex < pending.size()) {
+            ByteBuffer buffer = pending.get(pendingIndex);
+            int length = Math.min(buffer.remaining(), dst.remaining());
+            ByteBuffer slice = buffer.duplicate();
+            slice.limit(slice.position() + length);
+            dst.put(slice);
+            buffer.position(buffer.position() + length);
+            read += length;
+            if (!buffer.hasRemaining()) {
+                pendingIndex++;
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public boolean isCompleted() {
+        return done;
+    }
+
+    @Override
+    public void requestInput() {
+        synchronized (this) {
+            suspended = false;
+        }
+        pump();
+    }
+
+    @Override
+    public synchronized void suspendInput() {
+        suspended = true;
+    }
+
+    @Override
+    public void requestOutput() {
+    }
+
+    @Override
+    public void suspendOutput() {
+    }
+
+    @Override
+    public void shutdown() {
+        done = true;
+        Flow.Subscription s = subscription;
+        if (s != null) {
+            s.cancel();
+        }
+        Exception e = consumer.failure();
+        body.completeExceptionally(e != null ? e : new IOException("Exchange aborted"));
+    }
+
+    /**
+     * Hands the pending buffers to the consumer and, once they are all read, either requests the next ones or
+     * completes the response. Re-entrant calls from the consumer are folded into the running loop, and at most
+     * one list of buffers is requested at a time.
+     */
+    private void pump() {
+        boolean requestMore = false;
+        synchronized (this) {
+            if (pumping || done) {
+                return;
+            }
+            pumping = true;
+            try {
+                while (!done && !suspended && hasPending() && consumer.failure() == null) {
+                    consumer.consumeContent(this, this);
+                }
+                if (!done && !suspended && !hasPending()) {
+                    if (complete) {
+                        done = true;
+                        consumer.responseCompleted(new BasicHttpContext());
+                        body.complete(consumer.getResult());
+                    } else if (!awaiting) {
+                        awaiting = true;
+                        requestMore = true;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                done = true;
+                consumer.failed(e);
+                body.completeExceptionally(e);
+            } finally {
+                pumping = false;
+            }
+        }
+        Flow.Subscription s = subscription;
+        if (requestMore && s != null) {
+            s.request(1);
+        }
+    }
+
+    private boolean hasPending() {
+        return pendingIndex < pending.size();
+    }
+}
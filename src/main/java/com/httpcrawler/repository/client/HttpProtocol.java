@@ -0,0 +1,6 @@
+package com.httpcrawler.repository.client;
+
+public enum HttpProtocol {
+    HTTP_1_1,
+    HTTP_2
+}
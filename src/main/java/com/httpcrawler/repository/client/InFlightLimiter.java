@@ -0,0 +1,73 @@
+package com.httpcrawler.repository.client;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class InFlightLimiter {
+
+    private final int maxInFlight;
+    private final AtomicInteger inFlight;
+    private final Queue<Runnable> waiting;
+
+    public InFlightLimiter(int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new AtomicInteger();
+        this.waiting = new ConcurrentLinkedQueue<>();
+    }
+
+    public void submit(Runnable task) {
+        waiting.add(task);
+        drain();
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= maxInFlight) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+        drain();
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public int waiting() {
+        return waiting.size();
+    }
+
+    private void drain() {
+        while (!waiting.isEmpty()) {
+            int current = inFlight.get();
+            if (current >= maxInFlight) {
+                return;
+            }
+            if (!inFlight.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            Runnable task = waiting.poll();
+            if (task == null) {
+                inFlight.decrementAndGet();
+                continue;
+            }
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.httpcrawler.repository.client;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bodies of pages that carry an {@code ETag} or {@code Last-Modified} validator, bounded by total body size,
+ * so that a later fetch can be a conditional GET and reuse the body on {@code 304 Not Modified}.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+class PageCache {
+
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    private final Cache<String, CachedPage> pages;
+    private final int maxPageBytes;
+
+    PageCache(long maxBytes, int maxPageBytes, long ttlSeconds) {
+        this.pages = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .<String, CachedPage>weigher((url, page) -> ENTRY_OVERHEAD_BYTES + url.length() + page.body.length)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+        this.maxPageBytes = maxPageBytes;
+    }
+
+    @Nullable
+    CachedPage get(String url) {
+        return pages.getIfPresent(url);
+    }
+
+    void put(String url, CachedPage page) {
+        pages.put(url, page);
+    }
+
+    void invalidate(String url) {
+        pages.invalidate(url);
+    }
+
+    int maxPageBytes() {
+        return maxPageBytes;
+    }
+}
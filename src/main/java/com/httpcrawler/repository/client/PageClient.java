@@ -1,30 +1,418 @@
 package com.httpcrawler.repository.client;
 
-import org.apache.http.HttpEntity;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.httpcrawler.metrics.CrawlMetrics;
+import com.httpcrawler.metrics.FetchFailure;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.config.CookieSpecs;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.CookieManager;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Repository
 @ParametersAreNonnullByDefault
 public class PageClient {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PageClient.class);
 
-    private final CloseableHttpClient httpClient;
+    private static final int MAX_ROBOTS_TXT_LENGTH = 512 * 1024;
+    private static final int SC_TOO_MANY_REQUESTS = 429;
 
-    public PageClient() {
-        this.httpClient = HttpClients.custom()
+    private final CloseableHttpAsyncClient httpClient;
+    @Nullable
+    private final HttpClient http2Client;
+    private final PoolingNHttpClientConnectionManager connectionManager;
+    private final InFlightLimiter inFlightLimiter;
+    private final HostScheduler hostScheduler;
+    private final PageCache pageCache;
+    private final FetchPolicy fetchPolicy;
+    private final FetchPolicy robotsTxtPolicy;
+    private final ScheduledExecutorService scheduler;
+    private final CrawlMetrics metrics;
+    private final String userAgent;
+    private final long maxCrawlDelayMillis;
+    private final long fetchTimeoutMillis;
+    private final int socketTimeoutMillis;
+    private final boolean compression;
+
+    public PageClient(
+            @Value("${page-client.max-in-flight:256}") int maxInFlight,
+            @Value("${page-client.max-in-flight-per-host:8}") int maxInFlightPerHost,
+            @Value("${page-client.requests-per-second-per-host:10}") double requestsPerSecondPerHost,
+            @Value("${page-client.burst-per-host:10}") int burstPerHost,
+            @Value("${page-client.respect-crawl-delay:true}") boolean respectCrawlDelay,
+            @Value("${page-client.max-crawl-delay-seconds:30}") long maxCrawlDelaySeconds,
+            @Value("${page-client.keep-alive-seconds:30}") long keepAliveSeconds,
+            @Value("${page-client.idle-host-eviction-seconds:600}") long idleHostEvictionSeconds,
+            @Value("${page-client.user-agent:http-crawler}") String userAgent,
+            @Value("${page-client.page-cache-max-bytes:67108864}") long pageCacheMaxBytes,
+            @Value("${page-client.page-cache-max-page-bytes:2097152}") int pageCacheMaxPageBytes,
+            @Value("${page-client.page-cache-ttl-seconds:3600}") long pageCacheTtlSeconds,
+            @Value("${page-client.connect-timeout-millis:5000}") int connectTimeoutMillis,
+            @Value("${page-client.socket-timeout-millis:15000}") int socketTimeoutMillis,
+            @Value("${page-client.connection-request-timeout-millis:30000}") int connectionRequestTimeoutMillis,
+            @Value("${page-client.fetch-timeout-millis:60000}") long fetchTimeoutMillis,
+            @Value("${page-client.max-body-bytes:10485760}") long maxBodyBytes,
+            @Value("${page-client.allowed-content-types:text/html,application/xhtml+xml}") String[] allowedContentTypes,
+            @Value("${page-client.compression:true}") boolean compression,
+            @Value("${page-client.protocol:HTTP_1_1}") HttpProtocol protocol,
+            CrawlMetrics metrics
+    ) {
+        this.metrics = metrics;
+        this.userAgent = userAgent;
+        this.maxCrawlDelayMillis = TimeUnit.SECONDS.toMillis(maxCrawlDelaySeconds);
+        this.fetchTimeoutMillis = fetchTimeoutMillis;
+        this.socketTimeoutMillis = socketTimeoutMillis;
+        this.compression = compression;
+        this.inFlightLimiter = new InFlightLimiter(maxInFlight);
+        this.pageCache = new PageCache(pageCacheMaxBytes, pageCacheMaxPageBytes, pageCacheTtlSeconds);
+        this.fetchPolicy = new FetchPolicy(maxBodyBytes, Arrays.asList(allowedContentTypes));
+        this.robotsTxtPolicy = new FetchPolicy(MAX_ROBOTS_TXT_LENGTH, Collections.emptyList());
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(
+                1,
+                new ThreadFactoryBuilder()
+                        .setNameFormat(getClass().getSimpleName() + "-Scheduler-%d")
+                        .setPriority(Thread.NORM_PRIORITY)
+                        .setUncaughtExceptionHandler((t, e) -> LOGGER.error(e.getMessage(), e))
+                        .setDaemon(true)
+                        .build()
+        );
+        scheduler.setRemoveOnCancelPolicy(true);
+        this.scheduler = scheduler;
+        this.connectionManager = newConnectionManager(maxInFlight, maxInFlightPerHost);
+        long keepAliveMillis = TimeUnit.SECONDS.toMillis(keepAliveSeconds);
+        this.httpClient = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setUserAgent(userAgent)
                 .setDefaultRequestConfig(RequestConfig.custom()
-                        .setCookieSpec(CookieSpecs.STANDARD).build())
+                        .setCookieSpec(CookieSpecs.STANDARD)
+                        .setConnectTimeout(connectTimeoutMillis)
+                        .setSocketTimeout(socketTimeoutMillis)
+                        .setConnectionRequestTimeout(connectionRequestTimeoutMillis)
+                        .build())
+                .setKeepAliveStrategy((response, context) -> {
+                    long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return duration > 0 ? Math.min(duration, keepAliveMillis) : keepAliveMillis;
+                })
                 .build();
+        this.http2Client = protocol == HttpProtocol.HTTP_2
+                ? HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_2)
+                        .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                        .followRedirects(HttpClient.Redirect.NORMAL)
+                        .cookieHandler(new CookieManager())
+                        .build()
+                : null;
+        this.hostScheduler = new HostScheduler(maxInFlightPerHost, requestsPerSecondPerHost, burstPerHost,
+                respectCrawlDelay ? this::loadCrawlDelay : null, scheduler);
+        this.httpClient.start();
+        scheduler.scheduleWithFixedDelay(() -> {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(keepAliveMillis, TimeUnit.MILLISECONDS);
+        }, keepAliveMillis, keepAliveMillis, TimeUnit.MILLISECONDS);
+        long idleHostEvictionMillis = TimeUnit.SECONDS.toMillis(idleHostEvictionSeconds);
+        scheduler.scheduleWithFixedDelay(() -> hostScheduler.evictIdle(idleHostEvictionMillis),
+                idleHostEvictionMillis, idleHostEvictionMillis, TimeUnit.MILLISECONDS);
+        metrics.monitor(scheduler, "page-client-scheduler");
+        metrics.gauge("crawler.fetch.in.flight", "Requests sent and not yet finished", inFlightLimiter::inFlight);
+        metrics.gauge("crawler.fetch.waiting", "Requests waiting for an in-flight slot", inFlightLimiter::waiting);
+    }
+
+    public CompletableFuture<HttpResponse> getPage(String url, PageContentHandler handler, Executor executor) {
+        CachedPage cached = pageCache.get(url);
+        PageContentHandler cachingHandler = new CachingContentHandler(url, handler, pageCache, cached);
+        StreamingResponseConsumer consumer = new StreamingResponseConsumer(
+                new DecompressingContentHandler(cachingHandler, fetchPolicy), fetchPolicy, executor);
+        String host = HostScheduler.hostKey(url);
+        HttpGet request = newRequest(url, cached);
+        hostScheduler.submit(host, () -> inFlightLimiter.submit(() -> execute(request, host, consumer)));
+        return consumer.result();
+    }
+
+    @PreDestroy
+    protected void stop() {
+        scheduler.shutdownNow();
+        if (http2Client != null) {
+            http2Client.shutdownNow();
+        }
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            LOGGER.debug("", e);
+        }
+    }
+
+    private void execute(HttpGet request, String host, StreamingResponseConsumer consumer) {
+        long startNanos = System.nanoTime();
+        send(request, consumer, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                metrics.fetched(host, response.getStatusLine().getStatusCode(), System.nanoTime() - startNanos,
+                        consumer.bytesReceived());
+                pauseIfThrottled(host, response);
+                release(host);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                finishFailed(host, consumer, e, startNanos);
+            }
+
+            @Override
+            public void cancelled() {
+                finishFailed(host, consumer, new CancellationException("Request cancelled: " + request.getURI()),
+                        startNanos);
+            }
+        });
+    }
+
+    private void finishFailed(String host, StreamingResponseConsumer consumer, Exception e, long startNanos) {
+        HttpResponse response = consumer.response();
+        Exception failure = consumer.failure();
+        if (response != null) {
+            metrics.fetched(host, response.getStatusLine().getStatusCode(), System.nanoTime() - startNanos,
+                    consumer.bytesReceived());
+            pauseIfThrottled(host, response);
+        } else {
+            metrics.fetchFailed(host, FetchFailure.of(failure != null ? failure : e), System.nanoTime() - startNanos,
+                    consumer.bytesReceived());
+        }
+        release(host);
+        consumer.fail(e);
+    }
+
+    /**
+     * Executes the request and cancels it if it has not finished in {@code fetchTimeoutMillis}. Failing the
+     * exchange, by the policy or by the deadline, closes its connection and returns the lease to the pool.
+     */
+    private void send(HttpGet request, StreamingResponseConsumer consumer, FutureCallback<HttpResponse> callback) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        Future<?> future;
+        try {
+            future = dispatch(request, consumer, new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse response) {
+                    done.complete(null);
+                    callback.completed(response);
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    done.complete(null);
+                    callback.failed(e);
+                }
+
+                @Override
+                public void cancelled() {
+                    done.complete(null);
+                    callback.cancelled();
+                }
+            });
+        } catch (Exception e) {
+            callback.failed(e);
+            return;
+        }
+        ScheduledFuture<?> timeout = scheduler.schedule(() -> {
+            if (!done.isDone()) {
+                consumer.cancel(new SocketTimeoutException(
+                        "Fetch did not finish in " + fetchTimeoutMillis + " ms: " + request.getURI()));
+                future.cancel(true);
+            }
+        }, fetchTimeoutMillis, TimeUnit.MILLISECONDS);
+        done.whenComplete((ignored, e) -> timeout.cancel(false));
+    }
+
+    /**
+     * Sends the request with the async client over HTTP/1.1, or with the JDK client when HTTP/2 is configured,
+     * which multiplexes the requests to a host over one connection.
+     */
+    private Future<?> dispatch(HttpGet request, StreamingResponseConsumer consumer,
+                               FutureCallback<HttpResponse> callback) {
+        if (http2Client == null) {
+            return httpClient.execute(HttpAsyncMethods.create(request), consumer, callback);
+        }
+        HttpRequest.Builder builder = HttpRequest.newBuilder(request.getURI())
+                .timeout(Duration.ofMillis(socketTimeoutMillis))
+                .header(HttpHeaders.USER_AGENT, userAgent);
+        for (Header header : request.getAllHeaders()) {
+            builder.header(header.getName(), header.getValue());
+        }
+        CompletableFuture<java.net.http.HttpResponse<HttpResponse>> future =
+                http2Client.sendAsync(builder.GET().build(), new Http2Exchange(consumer));
+        future.whenComplete((response, e) -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause == null) {
+                callback.completed(response.body());
+            } else if (cause instanceof CancellationException) {
+                callback.cancelled();
+            } else {
+                callback.failed(cause instanceof Exception ? (Exception) cause : new IOException(cause));
+            }
+        });
+        return future;
+    }
+
+    private HttpGet newRequest(String url, @Nullable CachedPage cached) {
+        HttpGet request = newRequest(url);
+        if (cached != null) {
+            if (cached.etag != null) {
+                request.setHeader(HttpHeaders.IF_NONE_MATCH, cached.etag);
+            }
+            if (cached.lastModified != null) {
+                request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified);
+            }
+        }
+        return request;
+    }
+
+    private HttpGet newRequest(String url) {
+        HttpGet request = new HttpGet(url);
+        if (compression) {
+            request.setHeader(HttpHeaders.ACCEPT_ENCODING, DecompressingContentHandler.ACCEPT_ENCODING);
+        }
+        return request;
+    }
+
+    private void release(String host) {
+        inFlightLimiter.release();
+        hostScheduler.release(host);
+    }
+
+    private void pauseIfThrottled(String host, HttpResponse response) {
+        int status = response.getStatusLine().getStatusCode();
+        if (status != SC_TOO_MANY_REQUESTS && status != HttpStatus.SC_SERVICE_UNAVAILABLE) {
+            return;
+        }
+        Long retryAfterMillis = retryAfterMillis(response);
+        if (retryAfterMillis != null && retryAfterMillis > 0) {
+            hostScheduler.pause(host, Math.min(retryAfterMillis, maxCrawlDelayMillis));
+        }
+    }
+
+    @Nullable
+    private static Long retryAfterMillis(HttpResponse response) {
+        if (!response.containsHeader("Retry-After")) {
+            return null;
+        }
+        String value = response.getFirstHeader("Retry-After").getValue().trim();
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(value);
+            return date == null ? null : date.getTime() - System.currentTimeMillis();
+        }
+    }
+
+    private CompletableFuture<Double> loadCrawlDelay(String host) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        PageContentHandler handler = new PageContentHandler() {
+            @Override
+            public void onResponse(HttpResponse response, @Nullable Charset charset) {
+            }
+
+            @Override
+            public void onContent(ByteBuffer content) {
+                byte[] bytes = new byte[content.remaining()];
+                content.get(bytes);
+                body.write(bytes, 0, bytes.length);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        };
+        StreamingResponseConsumer consumer = new StreamingResponseConsumer(
+                new DecompressingContentHandler(handler, robotsTxtPolicy), robotsTxtPolicy, scheduler);
+        HttpGet request = newRequest(host + "/robots.txt");
+        send(request, consumer, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+            }
+
+            @Override
+            public void failed(Exception e) {
+                consumer.fail(e);
+            }
+
+            @Override
+            public void cancelled() {
+                consumer.fail(new CancellationException("Request cancelled: " + request.getURI()));
+            }
+        });
+        return consumer.result().handle((response, e) -> {
+            if (e != null) {
+                LOGGER.debug("Cannot load robots.txt of [{}]", host, e);
+                return 0.0;
+            }
+            return parseCrawlDelay(host, new String(body.toByteArray(), StandardCharsets.UTF_8));
+        });
+    }
+
+    private double parseCrawlDelay(String host, String robotsTxt) {
+        try {
+            Double seconds = RobotsTxt.crawlDelay(robotsTxt, userAgent);
+            if (seconds == null) {
+                return 0.0;
+            }
+            LOGGER.info("Crawl-delay of [{}] is {} s", host, seconds);
+            return Math.min(seconds, maxCrawlDelayMillis / 1000.0);
+        } catch (RuntimeException e) {
+            LOGGER.debug("Cannot parse robots.txt of [{}]", host, e);
+            return 0.0;
+        }
     }
 
-    public HttpEntity getPage(String url) throws IOException {
-        return httpClient.execute(new HttpGet(url)).getEntity();
+    private static PoolingNHttpClientConnectionManager newConnectionManager(int maxTotal, int maxPerHost) {
+        try {
+            PoolingNHttpClientConnectionManager manager = new PoolingNHttpClientConnectionManager(
+                    new DefaultConnectingIOReactor(IOReactorConfig.custom().setSoKeepAlive(true).build()));
+            manager.setMaxTotal(maxTotal);
+            manager.setDefaultMaxPerRoute(maxPerHost);
+            return manager;
+        } catch (IOReactorException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
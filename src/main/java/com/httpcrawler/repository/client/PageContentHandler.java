@@ -0,0 +1,19 @@
+package com.httpcrawler.repository.client;
+
+import org.apache.http.HttpResponse;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+@ParametersAreNonnullByDefault
+public interface PageContentHandler {
+
+    void onResponse(HttpResponse response, @Nullable Charset charset) throws IOException;
+
+    void onContent(ByteBuffer content) throws IOException;
+
+    void onComplete() throws IOException;
+}
@@ -0,0 +1,25 @@
+package com.httpcrawler.repository.client;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+
+/**
+ * A response the {@link FetchPolicy} refused to read; the connection is closed without reading the rest of
+ * the body.
+ */
+@ParametersAreNonnullByDefault
+public class RejectedPageException extends IOException {
+
+    public enum Reason {
+        STATUS,
+        CONTENT_TYPE,
+        TOO_LARGE
+    }
+
+    public final Reason reason;
+
+    public RejectedPageException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+}
@@ -0,0 +1,74 @@
+package com.httpcrawler.repository.client;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Locale;
+
+@ParametersAreNonnullByDefault
+final class RobotsTxt {
+
+    private static final String WILDCARD = "*";
+
+    private RobotsTxt() {
+    }
+
+    /**
+     * @return the {@code Crawl-delay} in seconds of the group matching {@code userAgent}, falling back to the
+     * {@code *} group, or {@code null} if neither sets one.
+     */
+    @Nullable
+    static Double crawlDelay(String content, String userAgent) {
+        String agent = userAgent.toLowerCase(Locale.ROOT);
+        Double wildcardDelay = null;
+        Double agentDelay = null;
+        boolean inWildcardGroup = false;
+        boolean inAgentGroup = false;
+        boolean readingAgents = false;
+        for (String line : content.split("\r\n|\r|\n")) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String field = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if (field.equals("user-agent")) {
+                if (!readingAgents) {
+                    inWildcardGroup = false;
+                    inAgentGroup = false;
+                    readingAgents = true;
+                }
+                String name = value.toLowerCase(Locale.ROOT);
+                inWildcardGroup |= name.equals(WILDCARD);
+                inAgentGroup |= !name.isEmpty() && !name.equals(WILDCARD) && agent.contains(name);
+                continue;
+            }
+            readingAgents = false;
+            if (field.equals("crawl-delay")) {
+                Double delay = parseDelay(value);
+                if (delay == null) {
+                    continue;
+                }
+                if (inAgentGroup) {
+                    agentDelay = delay;
+                } else if (inWildcardGroup) {
+                    wildcardDelay = delay;
+                }
+            }
+        }
+        return agentDelay != null ? agentDelay : wildcardDelay;
+    }
+
+    @Nullable
+    private static Double parseDelay(String value) {
+        try {
+            double delay = Double.parseDouble(value);
+            return delay >= 0 && !Double.isInfinite(delay) ? delay : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
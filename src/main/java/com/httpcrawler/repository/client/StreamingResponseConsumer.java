@@ -0,0 +1,249 @@
+package com.httpcrawler.repository.client;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.ParseException;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hands the response body to a {@link PageContentHandler} on the given executor, one chunk at a time and
+ * never concurrently. At most {@link #MAX_CHUNKS} chunks are buffered per response: when the handler falls
+ * behind, socket input is suspended until a chunk is returned. Responses and bodies the {@link FetchPolicy}
+ * rejects fail the exchange, which closes the connection instead of reading on.
+ */
+@ParametersAreNonnullByDefault
+class StreamingResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamingResponseConsumer.class);
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+    private static final int MAX_CHUNKS = 4;
+
+    private final PageContentHandler handler;
+    private final FetchPolicy policy;
+    private final Executor executor;
+    private final CompletableFuture<HttpResponse> result;
+    private final Queue<ByteBuffer> readyChunks;
+    private final Queue<ByteBuffer> freeChunks;
+    private final AtomicBoolean scheduled;
+    private final AtomicBoolean suspended;
+    private final AtomicBoolean finished;
+    private int allocatedChunks;
+
+    @Nullable
+    private volatile HttpResponse response;
+    @Nullable
+    private volatile IOControl ioControl;
+    @Nullable
+    private volatile Exception failure;
+    private volatile boolean ended;
+    private volatile long bytesReceived;
+
+    StreamingResponseConsumer(PageContentHandler handler, FetchPolicy policy, Executor executor) {
+        this.handler = handler;
+        this.policy = policy;
+        this.executor = executor;
+        this.result = new CompletableFuture<>();
+        this.readyChunks = new ConcurrentLinkedQueue<>();
+        this.freeChunks = new ConcurrentLinkedQueue<>();
+        this.scheduled = new AtomicBoolean();
+        this.suspended = new AtomicBoolean();
+        this.finished = new AtomicBoolean();
+    }
+
+    CompletableFuture<HttpResponse> result() {
+        return result;
+    }
+
+    long bytesReceived() {
+        return bytesReceived;
+    }
+
+    @Nullable
+    HttpResponse response() {
+        return response;
+    }
+
+    @Nullable
+    Exception failure() {
+        return failure;
+    }
+
+    void fail(Exception e) {
+        if (failure == null) {
+            failure = e;
+        }
+        schedule();
+    }
+
+    /**
+     * Fails the response and closes its connection if the body is being read.
+     */
+    void cancel(Exception e) {
+        abort(e);
+        schedule();
+    }
+
+    @Override
+    protected void onResponseReceived(HttpResponse response) throws IOException {
+        this.response = response;
+        policy.checkResponse(response);
+        handler.onResponse(response, charsetOf(response));
+    }
+
+    @Override
+    protected void onContentReceived(ContentDecoder decoder, IOControl ioControl) throws IOException {
+        this.ioControl = ioControl;
+        // once the body is complete there is nothing left to suspend: input is never requested again
+        while (failure == null && !decoder.isCompleted()) {
+            ByteBuffer chunk = freeChunks.poll();
+            if (chunk == null) {
+                if (allocatedChunks >= MAX_CHUNKS) {
+                    suspend(ioControl);
+                    return;
+                }
+                chunk = ByteBuffer.allocate(CHUNK_SIZE);
+                allocatedChunks++;
+            }
+            int read = decoder.read(chunk);
+            if (read <= 0) {
+                freeChunks.add(chunk);
+                return;
+            }
+            bytesReceived += read;
+            policy.checkBodyLength(bytesReceived);
+            chunk.flip();
+            readyChunks.add(chunk);
+            schedule();
+        }
+    }
+
+    @Override
+    protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+    }
+
+    @Override
+    protected HttpResponse buildResult(HttpContext context) {
+        ended = true;
+        schedule();
+        return response;
+    }
+
+    @Override
+    protected void releaseResources() {
+        ioControl = null;
+    }
+
+    private void suspend(IOControl ioControl) {
+        // suspend before raising the flag: a drain that resumes in between would otherwise be undone
+        ioControl.suspendInput();
+        suspended.set(true);
+        if (!freeChunks.isEmpty()) {
+            resume();
+        }
+    }
+
+    private void resume() {
+        IOControl control = ioControl;
+        if (control != null && suspended.compareAndSet(true, false)) {
+            control.requestInput();
+        }
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                if (finished.compareAndSet(false, true)) {
+                    result.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    private void drain() {
+        do {
+            ByteBuffer chunk;
+            while ((chunk = readyChunks.poll()) != null) {
+                if (failure == null) {
+                    try {
+                        handler.onContent(chunk);
+                    } catch (Exception e) {
+                        abort(e);
+                    }
+                }
+                chunk.clear();
+                freeChunks.add(chunk);
+                resume();
+            }
+            if ((ended || failure != null) && readyChunks.isEmpty() && finished.compareAndSet(false, true)) {
+                finish();
+            }
+            scheduled.set(false);
+        } while (hasWork() && scheduled.compareAndSet(false, true));
+    }
+
+    private boolean hasWork() {
+        return !readyChunks.isEmpty() || ((ended || failure != null) && !finished.get());
+    }
+
+    private void finish() {
+        Exception e = failure;
+        if (e != null) {
+            result.completeExceptionally(e);
+            return;
+        }
+        try {
+            handler.onComplete();
+            result.complete(response);
+        } catch (Exception ex) {
+            result.completeExceptionally(ex);
+        }
+    }
+
+    private void abort(Exception e) {
+        failure = e;
+        IOControl control = ioControl;
+        if (control != null) {
+            try {
+                control.shutdown();
+            } catch (IOException ex) {
+                LOGGER.debug("", ex);
+            }
+        }
+    }
+
+    @Nullable
+    private static Charset charsetOf(HttpResponse response) {
+        Header header = response.getFirstHeader(HttpHeaders.CONTENT_TYPE);
+        if (header == null) {
+            return null;
+        }
+        try {
+            return ContentType.parse(header.getValue()).getCharset();
+        } catch (ParseException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
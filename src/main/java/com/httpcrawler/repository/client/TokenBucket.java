@@ -0,0 +1,47 @@
+package com.httpcrawler.repository.client;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+class TokenBucket {
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private double tokensPerNano;
+    private double capacity;
+    private double tokens;
+    private long refilledAtNanos;
+
+    TokenBucket(double tokensPerSecond, double capacity, long nowNanos) {
+        configure(tokensPerSecond, capacity);
+        this.tokens = this.capacity;
+        this.refilledAtNanos = nowNanos;
+    }
+
+    /**
+     * A non-positive rate disables the limit.
+     */
+    void configure(double tokensPerSecond, double capacity) {
+        this.tokensPerNano = tokensPerSecond / NANOS_PER_SECOND;
+        this.capacity = Math.max(capacity, 1);
+        this.tokens = Math.min(tokens, this.capacity);
+    }
+
+    /**
+     * @return {@code 0} if a token was taken, otherwise the nanoseconds until one is available.
+     */
+    long tryTake(long nowNanos) {
+        if (tokensPerNano <= 0) {
+            return 0;
+        }
+        tokens = Math.min(capacity, tokens + (nowNanos - refilledAtNanos) * tokensPerNano);
+        refilledAtNanos = nowNanos;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano));
+    }
+}
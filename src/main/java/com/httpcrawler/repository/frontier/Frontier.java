@@ -0,0 +1,244 @@
+package com.httpcrawler.repository.frontier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded crawl frontier that always hands out the shallowest pending URL. Up to {@code maxEntriesInMemory}
+ * URLs are kept on the heap, the rest spill into memory-mapped segments of {@code segmentBytes} each until
+ * {@code maxDiskBytes} is used. When both are full {@link #offer} turns URLs away without waiting.
+ * Within one depth, URLs kept in memory are handed out before spilled ones. The queue of a depth is created
+ * when its first URL arrives.
+ * <p>
+ * A {@code breadthFirst} frontier also holds back a depth until every URL of the shallower depths has been
+ * handed out and reported {@link #done}, so each URL is first reached, and kept, at its shortest depth.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class Frontier {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Frontier.class);
+
+    private final int maxEntriesInMemory;
+    private final long maxDiskBytes;
+    private final int segmentBytes;
+    private final Path directory;
+    private final int maxDepth;
+    private final List<DepthQueue> queues;
+    private final boolean breadthFirst;
+    private final ReentrantLock lock;
+
+    private int entriesInMemory;
+    private long diskBytes;
+    private long size;
+    private boolean closed;
+
+    public Frontier(int maxDepth, int maxEntriesInMemory, long maxDiskBytes, int segmentBytes, Path directory,
+                    boolean breadthFirst) {
+        this.maxEntriesInMemory = maxEntriesInMemory;
+        this.maxDiskBytes = maxDiskBytes;
+        this.segmentBytes = segmentBytes;
+        this.directory = directory;
+        this.maxDepth = maxDepth;
+        this.queues = new ArrayList<>();
+        this.breadthFirst = breadthFirst;
+        this.lock = new ReentrantLock();
+    }
+
+    /**
+     * @return {@code false} if the URL was not queued because the frontier is full or closed
+     */
+    public boolean offer(String url, int depth, long members) {
+        if (depth < 0 || depth > maxDepth) {
+            throw new IllegalArgumentException("Depth out of range: " + depth);
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            DepthQueue queue = queue(depth);
+            if (entriesInMemory < maxEntriesInMemory) {
+                queue.memory.add(new FrontierEntry(url, depth, members));
+                entriesInMemory++;
+                size++;
+                return true;
+            }
+            byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+            if (FrontierSegment.recordSize(bytes) > segmentBytes || !spill(queue, bytes, members)) {
+                return false;
+            }
+            size++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the shallowest URL, or {@code null} if there is none or its depth is held back
+     */
+    @Nullable
+    public FrontierEntry poll() {
+        lock.lock();
+        try {
+            for (int depth = 0; depth < queues.size(); depth++) {
+                DepthQueue queue = queues.get(depth);
+                FrontierEntry entry = poll(queue, depth);
+                if (entry != null) {
+                    size--;
+                    queue.active++;
+                    return entry;
+                }
+                if (breadthFirst && queue.active > 0) {
+                    return null;
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reports that a URL handed out by {@link #poll} has been processed, including queueing its links.
+     */
+    public void done(int depth) {
+        lock.lock();
+        try {
+            queues.get(depth).active--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops every queued URL, leaving the frontier open.
+     *
+     * @return the number of URLs dropped
+     */
+    public long clear() {
+        lock.lock();
+        try {
+            long dropped = size;
+            for (DepthQueue queue : queues) {
+                queue.memory.clear();
+                queue.segments.clear();
+            }
+            entriesInMemory = 0;
+            diskBytes = 0;
+            size = 0;
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public long size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of queued URLs kept on the heap rather than spilled
+     */
+    public long sizeInMemory() {
+        lock.lock();
+        try {
+            return entriesInMemory;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long diskBytes() {
+        lock.lock();
+        try {
+            return diskBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            for (DepthQueue queue : queues) {
+                queue.memory.clear();
+                queue.segments.clear();
+            }
+            entriesInMemory = 0;
+            diskBytes = 0;
+            size = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private DepthQueue queue(int depth) {
+        while (queues.size() <= depth) {
+            queues.add(new DepthQueue());
+        }
+        return queues.get(depth);
+    }
+
+    private boolean spill(DepthQueue queue, byte[] bytes, long members) {
+        FrontierSegment tail = queue.segments.peekLast();
+        if (tail != null && tail.write(bytes, members)) {
+            return true;
+        }
+        if (diskBytes + segmentBytes > maxDiskBytes) {
+            return false;
+        }
+        try {
+            FrontierSegment segment = FrontierSegment.create(directory, segmentBytes);
+            queue.segments.add(segment);
+            diskBytes += segmentBytes;
+            return segment.write(bytes, members);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot create frontier segment in [{}]", directory, e);
+            return false;
+        }
+    }
+
+    @Nullable
+    private FrontierEntry poll(DepthQueue queue, int depth) {
+        FrontierEntry entry = queue.memory.poll();
+        if (entry != null) {
+            entriesInMemory--;
+            return entry;
+        }
+        FrontierSegment head = queue.segments.peekFirst();
+        while (head != null && !head.hasNext() && queue.segments.size() > 1) {
+            queue.segments.pollFirst();
+            diskBytes -= segmentBytes;
+            head = queue.segments.peekFirst();
+        }
+        return head != null && head.hasNext() ? head.read(depth) : null;
+    }
+
+    private static class DepthQueue {
+        final ArrayDeque<FrontierEntry> memory = new ArrayDeque<>();
+        final ArrayDeque<FrontierSegment> segments = new ArrayDeque<>();
+        long active;
+    }
+}
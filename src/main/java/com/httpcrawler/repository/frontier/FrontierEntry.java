@@ -0,0 +1,22 @@
+package com.httpcrawler.repository.frontier;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+
+@Immutable
+@ParametersAreNonnullByDefault
+public class FrontierEntry {
+
+    public final String url;
+    public final int depth;
+    /**
+     * Bit mask of the crawl's seeds that queued the URL at this depth.
+     */
+    public final long members;
+
+    public FrontierEntry(String url, int depth, long members) {
+        this.url = url;
+        this.depth = depth;
+        this.members = members;
+    }
+}
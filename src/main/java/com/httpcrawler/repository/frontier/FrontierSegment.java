@@ -0,0 +1,69 @@
+package com.httpcrawler.repository.frontier;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only queue of URLs and their member masks in a memory-mapped temporary file. The file is unlinked as
+ * soon as it is mapped, so nothing is left behind if the process dies; the mapping lives until the segment is
+ * garbage collected.
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+class FrontierSegment {
+
+    private static final int LENGTH_BYTES = Integer.BYTES;
+    private static final int HEADER_BYTES = LENGTH_BYTES + Long.BYTES;
+
+    private final MappedByteBuffer buffer;
+    private int readPosition;
+
+    private FrontierSegment(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    static FrontierSegment create(Path directory, int capacity) throws IOException {
+        Files.createDirectories(directory);
+        Path file = Files.createTempFile(directory, "frontier-", ".seg");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE)) {
+            return new FrontierSegment(channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+        }
+    }
+
+    static int recordSize(byte[] url) {
+        return HEADER_BYTES + url.length;
+    }
+
+    boolean write(byte[] url, long members) {
+        if (buffer.remaining() < recordSize(url)) {
+            return false;
+        }
+        buffer.putInt(url.length);
+        buffer.putLong(members);
+        buffer.put(url);
+        return true;
+    }
+
+    boolean hasNext() {
+        return readPosition < buffer.position();
+    }
+
+    FrontierEntry read(int depth) {
+        int length = buffer.getInt(readPosition);
+        long members = buffer.getLong(readPosition + LENGTH_BYTES);
+        byte[] url = new byte[length];
+        for (int i = 0; i < length; i++) {
+            url[i] = buffer.get(readPosition + HEADER_BYTES + i);
+        }
+        readPosition += HEADER_BYTES + length;
+        return new FrontierEntry(new String(url, StandardCharsets.UTF_8), depth, members);
+    }
+}
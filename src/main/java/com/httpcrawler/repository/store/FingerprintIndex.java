@@ -0,0 +1,88 @@
+package com.httpcrawler.repository.store;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * URL fingerprint to record location, in two parallel {@code long[]} arrays with linear probing.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+class FingerprintIndex {
+
+    static final long MISSING = -1L;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long EMPTY = 0L;
+    private static final long ZERO_REPLACEMENT = 1L;
+
+    private long[] keys;
+    private long[] values;
+    private int size;
+
+    FingerprintIndex() {
+        this.keys = new long[INITIAL_CAPACITY];
+        this.values = new long[INITIAL_CAPACITY];
+    }
+
+    synchronized long get(long fingerprint) {
+        fingerprint = key(fingerprint);
+        int mask = keys.length - 1;
+        int index = slot(fingerprint, mask);
+        while (keys[index] != EMPTY) {
+            if (keys[index] == fingerprint) {
+                return values[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    synchronized void put(long fingerprint, long location) {
+        if (insert(keys, values, key(fingerprint), location)) {
+            size++;
+            if (size * 2 > keys.length) {
+                resize();
+            }
+        }
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private void resize() {
+        long[] resizedKeys = new long[keys.length * 2];
+        long[] resizedValues = new long[keys.length * 2];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                insert(resizedKeys, resizedValues, keys[i], values[i]);
+            }
+        }
+        keys = resizedKeys;
+        values = resizedValues;
+    }
+
+    private static boolean insert(long[] keys, long[] values, long fingerprint, long location) {
+        int mask = keys.length - 1;
+        int index = slot(fingerprint, mask);
+        while (keys[index] != EMPTY) {
+            if (keys[index] == fingerprint) {
+                values[index] = location;
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = fingerprint;
+        values[index] = location;
+        return true;
+    }
+
+    private static long key(long fingerprint) {
+        return fingerprint == EMPTY ? ZERO_REPLACEMENT : fingerprint;
+    }
+
+    private static int slot(long fingerprint, int mask) {
+        return (int) (fingerprint ^ fingerprint >>> 32) & mask;
+    }
+}
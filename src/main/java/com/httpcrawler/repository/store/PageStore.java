@@ -0,0 +1,425 @@
+package com.httpcrawler.repository.store;
+
+import com.httpcrawler.data.UrlFingerprint;
+import com.httpcrawler.repository.client.PageContentHandler;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.ParseException;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.PreDestroy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Append-only store of fetched pages. Records go to numbered segment files and are found through an in-memory
+ * index from URL fingerprint to segment and offset, rebuilt by scanning the segments on startup. A record is
+ * {@code magic, length, payload, crc32}; a torn record at the end of the last segment is truncated away.
+ * Newer records of a URL shadow older ones, which are never reclaimed. Headers that carry credentials or
+ * session state are not stored.
+ */
+@Repository
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class PageStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PageStore.class);
+
+    private static final int MAGIC = 0x50475331;
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    private static final int REPLAY_CHUNK_SIZE = 8 * 1024;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final Set<String> SENSITIVE_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        SENSITIVE_HEADERS.addAll(Arrays.asList(HttpHeaders.AUTHORIZATION, HttpHeaders.PROXY_AUTHORIZATION,
+                "Cookie", "Set-Cookie", "Set-Cookie2"));
+    }
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final int maxPageBytes;
+    private final long maxAgeMillis;
+    private final FingerprintIndex index;
+    private final ConcurrentMap<Integer, FileChannel> segments;
+
+    private int activeSegment;
+    private long activeSegmentSize;
+    private long totalBytes;
+    private boolean full;
+
+    public PageStore(
+            @Value("${page-store.enabled:false}") boolean enabled,
+            @Value("${page-store.directory:${java.io.tmpdir}/http-crawler/page-store}") String directory,
+            @Value("${page-store.segment-bytes:268435456}") long segmentBytes,
+            @Value("${page-store.max-bytes:10737418240}") long maxBytes,
+            @Value("${page-store.max-page-bytes:4194304}") int maxPageBytes,
+            @Value("${page-store.max-age-seconds:86400}") long maxAgeSeconds
+    ) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.segmentBytes = Math.min(segmentBytes, OFFSET_MASK);
+        this.maxBytes = maxBytes;
+        this.maxPageBytes = maxPageBytes;
+        this.maxAgeMillis = TimeUnit.SECONDS.toMillis(maxAgeSeconds);
+        this.index = new FingerprintIndex();
+        this.segments = new ConcurrentHashMap<>();
+        if (enabled) {
+            try {
+                open();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open page store in " + directory, e);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isFresh(StoredPage page) {
+        return System.currentTimeMillis() - page.fetchedAtMillis <= maxAgeMillis;
+    }
+
+    @Nullable
+    public StoredPage find(String url) {
+        if (!enabled) {
+            return null;
+        }
+        long location = index.get(UrlFingerprint.of(url));
+        if (location == FingerprintIndex.MISSING) {
+            return null;
+        }
+        FileChannel channel = segments.get((int) (location >>> OFFSET_BITS));
+        if (channel == null) {
+            return null;
+        }
+        try {
+            ByteBuffer header = read(channel, location & OFFSET_MASK, RECORD_HEADER_BYTES);
+            int length = header.getInt(Integer.BYTES);
+            ByteBuffer payload = read(channel, (location & OFFSET_MASK) + RECORD_HEADER_BYTES, length);
+            StoredPage page = decode(payload);
+            return page.url.equals(url) ? page : null;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Cannot read stored page [{}]", url, e);
+            return null;
+        }
+    }
+
+    public PageContentHandler recording(String url, PageContentHandler delegate) {
+        return enabled ? new RecordingContentHandler(url, delegate, this, maxPageBytes) : delegate;
+    }
+
+    /**
+     * Feeds a stored page to {@code handler} on {@code executor}, as {@link
+     * com.httpcrawler.repository.client.PageClient#getPage} would.
+     */
+    public CompletableFuture<HttpResponse> replay(StoredPage page, PageContentHandler handler, Executor executor) {
+        CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, page.status, null);
+                response.setHeaders(page.headers);
+                handler.onResponse(response, charsetOf(response));
+                byte[] body = page.body();
+                for (int offset = 0; offset < body.length; offset += REPLAY_CHUNK_SIZE) {
+                    handler.onContent(ByteBuffer.wrap(body, offset, Math.min(REPLAY_CHUNK_SIZE, body.length - offset)));
+                }
+                handler.onComplete();
+                result.complete(response);
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    @PreDestroy
+    protected synchronized void stop() {
+        for (FileChannel channel : segments.values()) {
+            try {
+                channel.force(false);
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.debug("", e);
+            }
+        }
+        segments.clear();
+    }
+
+    /**
+     * Stores the body the page cache replayed for a {@code 304 Not Modified} as a fresh {@code 200 OK}, with the
+     * headers of the stored copy updated by those of the {@code 304}.
+     */
+    void storeRevalidated(String url, HttpResponse notModified, @Nullable Charset charset, byte[] body,
+                          int bodyLength) {
+        StoredPage previous = find(url);
+        List<Header> headers = new ArrayList<>();
+        if (previous != null) {
+            Set<String> updated = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            for (Header header : notModified.getAllHeaders()) {
+                updated.add(header.getName());
+            }
+            for (Header header : previous.headers) {
+                if (!updated.contains(header.getName())) {
+                    headers.add(header);
+                }
+            }
+        }
+        headers.addAll(Arrays.asList(notModified.getAllHeaders()));
+        boolean hasContentType = headers.stream()
+                .anyMatch(header -> header.getName().equalsIgnoreCase(HttpHeaders.CONTENT_TYPE));
+        if (charset != null && !hasContentType) {
+            headers.add(new BasicHeader(HttpHeaders.CONTENT_TYPE,
+                    ContentType.TEXT_HTML.withCharset(charset).toString()));
+        }
+        store(url, HttpStatus.SC_OK, headers.toArray(new Header[0]), body, bodyLength);
+    }
+
+    void store(String url, int status, Header[] headers, byte[] body, int bodyLength) {
+        ByteBuffer record = encode(url, System.currentTimeMillis(), status, headers, body, bodyLength);
+        synchronized (this) {
+            if (segments.isEmpty()) {
+                return;
+            }
+            if (totalBytes + record.remaining() > maxBytes) {
+                if (!full) {
+                    full = true;
+                    LOGGER.warn("Page store in [{}] reached {} bytes, new pages are not stored", directory, maxBytes);
+                }
+                return;
+            }
+            try {
+                if (activeSegmentSize > 0 && activeSegmentSize + record.remaining() > segmentBytes) {
+                    segments.get(activeSegment).force(false);
+                    openSegment(activeSegment + 1);
+                }
+                long offset = activeSegmentSize;
+                int length = record.remaining();
+                FileChannel channel = segments.get(activeSegment);
+                while (record.hasRemaining()) {
+                    channel.write(record, offset + record.position());
+                }
+                activeSegmentSize += length;
+                totalBytes += length;
+                index.put(UrlFingerprint.of(url), (long) activeSegment << OFFSET_BITS | offset);
+            } catch (IOException e) {
+                LOGGER.warn("Cannot store page [{}]", url, e);
+            }
+        }
+    }
+
+    private synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+        List<Integer> ids = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    ids.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("Skipping unknown file [{}] in page store", file);
+                }
+            }
+        }
+        Collections.sort(ids);
+        for (int i = 0; i < ids.size(); i++) {
+            openSegment(ids.get(i));
+            scan(ids.get(i), i == ids.size() - 1);
+        }
+        if (ids.isEmpty()) {
+            openSegment(1);
+        }
+        LOGGER.info("Page store in [{}]: {} pages in {} bytes", directory, index.size(), totalBytes);
+    }
+
+    private void openSegment(int id) throws IOException {
+        Path file = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        segments.put(id, channel);
+        activeSegment = id;
+        activeSegmentSize = channel.size();
+    }
+
+    private void scan(int id, boolean last) throws IOException {
+        FileChannel channel = segments.get(id);
+        long size = channel.size();
+        long position = 0;
+        while (position + RECORD_HEADER_BYTES <= size) {
+            ByteBuffer header = read(channel, position, RECORD_HEADER_BYTES);
+            int length = header.getInt(Integer.BYTES);
+            if (header.getInt(0) != MAGIC || length < Long.BYTES + Integer.BYTES
+                    || position + RECORD_HEADER_BYTES + length > size) {
+                break;
+            }
+            ByteBuffer payload = read(channel, position + RECORD_HEADER_BYTES, length);
+            if (!hasValidChecksum(payload)) {
+                break;
+            }
+            index.put(payload.getLong(0), (long) id << OFFSET_BITS | position);
+            position += RECORD_HEADER_BYTES + length;
+        }
+        if (position < size) {
+            LOGGER.warn("Page store segment {} is damaged after offset {}", id, position);
+            if (last) {
+                channel.truncate(position);
+                activeSegmentSize = position;
+            }
+        }
+        totalBytes += position;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of page store segment");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /*
+     * payload: fingerprint, fetchedAtMillis, status, url, headerCount, (name, value)*, bodyLength, body, crc32
+     */
+    private static ByteBuffer encode(String url, long fetchedAtMillis, int status, Header[] headers, byte[] body,
+                                     int bodyLength) {
+        byte[] compressed = compress(body, bodyLength);
+        List<byte[]> strings = new ArrayList<>();
+        strings.add(url.getBytes(StandardCharsets.UTF_8));
+        for (Header header : headers) {
+            if (!SENSITIVE_HEADERS.contains(header.getName())) {
+                strings.add(header.getName().getBytes(StandardCharsets.UTF_8));
+                strings.add(header.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int length = Long.BYTES * 2 + Integer.BYTES * 4 + compressed.length + Integer.BYTES;
+        for (byte[] string : strings) {
+            length += Integer.BYTES + string.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_BYTES + length);
+        buffer.putInt(MAGIC).putInt(length);
+        buffer.putLong(UrlFingerprint.of(url)).putLong(fetchedAtMillis).putInt(status);
+        putBytes(buffer, strings.get(0));
+        buffer.putInt(strings.size() / 2);
+        for (int i = 1; i < strings.size(); i++) {
+            putBytes(buffer, strings.get(i));
+        }
+        buffer.putInt(bodyLength);
+        putBytes(buffer, compressed);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), RECORD_HEADER_BYTES, length - Integer.BYTES);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    private static StoredPage decode(ByteBuffer payload) throws IOException {
+        if (!hasValidChecksum(payload)) {
+            throw new IOException("Page store record checksum mismatch");
+        }
+        payload.position(Long.BYTES);
+        long fetchedAtMillis = payload.getLong();
+        int status = payload.getInt();
+        String url = new String(getBytes(payload), StandardCharsets.UTF_8);
+        Header[] headers = new Header[payload.getInt()];
+        for (int i = 0; i < headers.length; i++) {
+            headers[i] = new BasicHeader(new String(getBytes(payload), StandardCharsets.UTF_8),
+                    new String(getBytes(payload), StandardCharsets.UTF_8));
+        }
+        int bodyLength = payload.getInt();
+        return new StoredPage(url, fetchedAtMillis, status, headers, bodyLength, getBytes(payload));
+    }
+
+    private static boolean hasValidChecksum(ByteBuffer payload) {
+        int end = payload.limit() - Integer.BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), payload.arrayOffset(), end);
+        return (int) crc.getValue() == payload.getInt(end);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] compress(byte[] body, int length) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(body, 0, length);
+            deflater.finish();
+            byte[] compressed = new byte[Math.max(64, length / 2)];
+            int compressedLength = 0;
+            while (!deflater.finished()) {
+                if (compressedLength == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                compressedLength +=
+                        deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+            }
+            return Arrays.copyOf(compressed, compressedLength);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Nullable
+    private static Charset charsetOf(HttpResponse response) {
+        Header header = response.getFirstHeader(HttpHeaders.CONTENT_TYPE);
+        if (header == null) {
+            return null;
+        }
+        try {
+            return ContentType.parse(header.getValue()).getCharset();
+        } catch (ParseException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
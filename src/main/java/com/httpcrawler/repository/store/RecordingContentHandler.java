@@ -0,0 +1,93 @@
+package com.httpcrawler.repository.store;
+
+import com.httpcrawler.repository.client.PageContentHandler;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Stores the body of a {@code 200 OK}, and the body the page cache replays for a {@code 304 Not Modified} so
+ * that the stored copy is refreshed along with it.
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+class RecordingContentHandler implements PageContentHandler {
+
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    private final String url;
+    private final PageContentHandler delegate;
+    private final PageStore pageStore;
+    private final int maxPageBytes;
+    @Nullable
+    private HttpResponse response;
+    @Nullable
+    private Charset charset;
+    @Nullable
+    private byte[] body;
+    private int bodyLength;
+    private boolean notModified;
+    private boolean replayed;
+
+    RecordingContentHandler(String url, PageContentHandler delegate, PageStore pageStore, int maxPageBytes) {
+        this.url = url;
+        this.delegate = delegate;
+        this.pageStore = pageStore;
+        this.maxPageBytes = maxPageBytes;
+    }
+
+    @Override
+    public void onResponse(HttpResponse response, @Nullable Charset charset) throws IOException {
+        int status = response.getStatusLine().getStatusCode();
+        if (status == HttpStatus.SC_OK || status == HttpStatus.SC_NOT_MODIFIED) {
+            this.response = response;
+            this.charset = charset;
+            this.notModified = status == HttpStatus.SC_NOT_MODIFIED;
+            this.body = new byte[Math.min(INITIAL_BUFFER_SIZE, maxPageBytes)];
+        }
+        delegate.onResponse(response, charset);
+    }
+
+    @Override
+    public void onContent(ByteBuffer content) throws IOException {
+        replayed = true;
+        if (body != null) {
+            record(content);
+        }
+        delegate.onContent(content);
+    }
+
+    @Override
+    public void onComplete() throws IOException {
+        delegate.onComplete();
+        if (response == null || body == null) {
+            return;
+        }
+        if (!notModified) {
+            pageStore.store(url, response.getStatusLine().getStatusCode(), response.getAllHeaders(), body,
+                    bodyLength);
+        } else if (replayed) {
+            pageStore.storeRevalidated(url, response, charset, body, bodyLength);
+        }
+    }
+
+    private void record(ByteBuffer content) {
+        int length = content.remaining();
+        if (bodyLength + length > maxPageBytes) {
+            body = null;
+            return;
+        }
+        if (bodyLength + length > body.length) {
+            body = Arrays.copyOf(body, Math.min(Math.max(body.length * 2, bodyLength + length), maxPageBytes));
+        }
+        content.duplicate().get(body, bodyLength, length);
+        bodyLength += length;
+    }
+}
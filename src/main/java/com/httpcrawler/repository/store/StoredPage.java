@@ -0,0 +1,60 @@
+package com.httpcrawler.repository.store;
+
+import org.apache.http.Header;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+@Immutable
+@ParametersAreNonnullByDefault
+public class StoredPage {
+
+    public final String url;
+    public final long fetchedAtMillis;
+    public final int status;
+    public final Header[] headers;
+    private final int bodyLength;
+    private final byte[] compressedBody;
+
+    StoredPage(String url, long fetchedAtMillis, int status, Header[] headers, int bodyLength, byte[] compressedBody) {
+        this.url = url;
+        this.fetchedAtMillis = fetchedAtMillis;
+        this.status = status;
+        this.headers = headers;
+        this.bodyLength = bodyLength;
+        this.compressedBody = compressedBody;
+    }
+
+    public byte[] body() throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressedBody);
+            byte[] body = new byte[bodyLength];
+            int length = 0;
+            while (length < bodyLength && !inflater.finished()) {
+                int inflated = inflater.inflate(body, length, bodyLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated page body: " + url);
+                }
+                length += inflated;
+            }
+            return body;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    int compressedLength() {
+        return compressedBody.length;
+    }
+
+    byte[] compressedBody() {
+        return compressedBody;
+    }
+
+    int bodyLength() {
+        return bodyLength;
+    }
+}
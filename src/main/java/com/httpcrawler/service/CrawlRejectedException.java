@@ -0,0 +1,18 @@
+package com.httpcrawler.service;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Thrown when a crawl cannot be admitted because the running crawls use up the memory limit, or when the same
+ * crawl requested earlier is still running after the crawl timeout.
+ */
+@ParametersAreNonnullByDefault
+public class CrawlRejectedException extends RuntimeException {
+
+    public final long retryAfterSeconds;
+
+    public CrawlRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
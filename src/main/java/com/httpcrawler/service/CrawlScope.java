@@ -0,0 +1,97 @@
+package com.httpcrawler.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+
+/**
+ * Owns every task of one crawl. Each task runs on its own virtual thread once it holds a permit of both the
+ * crawl's and the global semaphore. {@link #cancel()} interrupts all running tasks and drops those that have
+ * not started yet, even if they are waiting for a permit. A task that fails with an unexpected exception
+ * cancels its siblings and reports the failure once, so no task outlives its crawl.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+class CrawlScope implements Executor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrawlScope.class);
+
+    private final Semaphore permits;
+    private final Semaphore globalPermits;
+    private final ThreadFactory threadFactory;
+    private final Consumer<Throwable> onFailure;
+    private final Set<Thread> running;
+    private volatile boolean cancelled;
+
+    CrawlScope(String name, int maxConcurrentTasks, Semaphore globalPermits, Consumer<Throwable> onFailure) {
+        this.permits = new Semaphore(maxConcurrentTasks);
+        this.globalPermits = globalPermits;
+        this.threadFactory = Thread.ofVirtual().name(name + "-", 0).factory();
+        this.onFailure = onFailure;
+        this.running = ConcurrentHashMap.newKeySet();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        threadFactory.newThread(() -> run(task)).start();
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    void cancel() {
+        cancelled = true;
+        for (Thread thread : running) {
+            thread.interrupt();
+        }
+    }
+
+    private void run(Runnable task) {
+        Thread thread = Thread.currentThread();
+        running.add(thread);
+        try {
+            if (cancelled) {
+                return;
+            }
+            permits.acquire();
+            try {
+                globalPermits.acquire();
+                try {
+                    if (!cancelled) {
+                        task.run();
+                    }
+                } finally {
+                    globalPermits.release();
+                }
+            } finally {
+                permits.release();
+            }
+        } catch (InterruptedException e) {
+            LOGGER.debug("Task of cancelled crawl dropped while waiting for a permit");
+        } catch (RuntimeException | Error e) {
+            fail(e);
+        } finally {
+            running.remove(thread);
+        }
+    }
+
+    private void fail(Throwable e) {
+        synchronized (this) {
+            if (cancelled) {
+                LOGGER.debug("Task of cancelled crawl failed", e);
+                return;
+            }
+            cancel();
+        }
+        LOGGER.error(e.getMessage(), e);
+        onFailure.accept(e);
+    }
+}
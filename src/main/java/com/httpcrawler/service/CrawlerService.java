@@ -1,13 +1,38 @@
 package com.httpcrawler.service;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.httpcrawler.cluster.ClusterService;
+import com.httpcrawler.data.CrawlAllowance;
+import com.httpcrawler.data.CrawlBudget;
+import com.httpcrawler.data.CrawlSeed;
+import com.httpcrawler.data.CrawlStatistics;
+import com.httpcrawler.data.CrawlTracker;
+import com.httpcrawler.data.ExecutionMode;
+import com.httpcrawler.data.BloomVisitedSet;
+import com.httpcrawler.data.FingerprintSet;
+import com.httpcrawler.data.LinkScope;
+import com.httpcrawler.data.MemoryUsage;
+import com.httpcrawler.data.ReachMap;
 import com.httpcrawler.data.Root;
+import com.httpcrawler.data.UrlFingerprint;
+import com.httpcrawler.data.VisitedSet;
+import com.httpcrawler.data.VisitedSetMode;
+import com.httpcrawler.data.WordCountTable;
+import com.httpcrawler.data.WordCounter;
+import com.httpcrawler.metrics.CrawlMetrics;
+import com.httpcrawler.metrics.FetchFailure;
+import com.httpcrawler.parser.HtmlHandler;
+import com.httpcrawler.parser.HtmlTokenizer;
+import com.httpcrawler.parser.PageDecoder;
+import com.httpcrawler.parser.UrlCanonicalizer;
+import com.httpcrawler.repository.client.InFlightLimiter;
 import com.httpcrawler.repository.client.PageClient;
-import org.apache.http.HttpEntity;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
+import com.httpcrawler.repository.client.PageContentHandler;
+import com.httpcrawler.repository.frontier.Frontier;
+import com.httpcrawler.repository.frontier.FrontierEntry;
+import com.httpcrawler.repository.store.PageStore;
+import com.httpcrawler.repository.store.StoredPage;
+import org.apache.http.HttpResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -16,72 +41,259 @@ import org.springframework.stereotype.Service;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.annotation.PreDestroy;
-import java.io.BufferedReader;
+import javax.validation.ValidationException;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
 
 @Service
 @ParametersAreNonnullByDefault
 public class CrawlerService {
     private static final Logger LOGGER = LoggerFactory.getLogger(CrawlerService.class);
 
-    private final ConcurrentMap<Root, ConcurrentMap<String, Boolean>> seen;
-    private final ConcurrentMap<Root, String> baseUrls;
-    private final ConcurrentMap<Root, Integer> depths;
+    private static final long FIRST_SEED = 1L;
+
+    private final ConcurrentMap<Root, VisitedSet> seen;
+    private final ConcurrentMap<Root, Frontier> frontiers;
+    private final ConcurrentMap<Root, List<CrawlSeed>> seeds;
+    private final ConcurrentMap<Root, SharedPages> sharedPages;
+    private final ConcurrentMap<Root, InFlightLimiter> inFlightLimiters;
+    private final ConcurrentMap<Root, CrawlStatistics> statistics;
+    private final ConcurrentMap<Root, Boolean> offlineRoots;
+    private final ConcurrentMap<Root, CrawlScope> scopes;
+    private final ConcurrentMap<Root, CrawlAllowance> allowances;
+    private final int maxInFlightPerCrawl;
+    private final ExecutionMode executionMode;
+    private final int maxTasksPerCrawl;
+    private final Semaphore taskPermits;
+    private final VisitedSetMode visitedSetMode;
+    private final long bloomExpectedUrls;
+    private final double bloomFalsePositiveRate;
+    private final int frontierMemoryEntries;
+    private final long frontierMaxDiskBytes;
+    private final int frontierSegmentBytes;
+    private final Path frontierDirectory;
+    private final boolean breadthFirst;
+    private final long sharedPagesMaxBytes;
+    private final UrlCanonicalizer urlCanonicalizer;
     private final PageClient pageClient;
+    private final PageStore pageStore;
     private final NotifierService notifierService;
     private final TextParserService textParserService;
+    private final ClusterService clusterService;
+    private final MemoryGovernor memoryGovernor;
+    private final CrawlMetrics metrics;
 
     private final ExecutorService executorService;
 
     public CrawlerService(
+            @Value("${execution-mode:POOLS}") ExecutionMode executionMode,
             @Value("${crawler-service.thread-count:4}") int threadCount,
+            @Value("${crawler-service.max-tasks-per-crawl:64}") int maxTasksPerCrawl,
+            @Value("${crawler-service.max-tasks:1024}") int maxTasks,
+            @Value("${crawler-service.max-in-flight-per-crawl:64}") int maxInFlightPerCrawl,
+            @Value("${crawler-service.visited-set:EXACT}") VisitedSetMode visitedSetMode,
+            @Value("${crawler-service.bloom-expected-urls:1000000}") long bloomExpectedUrls,
+            @Value("${crawler-service.bloom-false-positive-rate:0.001}") double bloomFalsePositiveRate,
+            @Value("${crawler-service.frontier-memory-entries:10000}") int frontierMemoryEntries,
+            @Value("${crawler-service.frontier-max-disk-bytes:1073741824}") long frontierMaxDiskBytes,
+            @Value("${crawler-service.frontier-segment-bytes:8388608}") int frontierSegmentBytes,
+            @Value("${crawler-service.frontier-directory:${java.io.tmpdir}/http-crawler-frontier}")
+                    String frontierDirectory,
+            @Value("${crawler-service.strict-breadth-first:true}") boolean breadthFirst,
+            @Value("${crawler-service.shared-pages-max-bytes:67108864}") long sharedPagesMaxBytes,
+            @Value("${crawler-service.link-scope:PREFIX}") LinkScope linkScope,
+            @Value("${crawler-service.ignored-query-params:}") List<String> ignoredQueryParams,
             PageClient pageClient,
+            PageStore pageStore,
             NotifierService notifierService,
-            TextParserService textParserService
+            TextParserService textParserService,
+            ClusterService clusterService,
+            MemoryGovernor memoryGovernor,
+            CrawlMetrics metrics
     ) {
         this.seen = new ConcurrentHashMap<>();
-        this.baseUrls = new ConcurrentHashMap<>();
-        this.depths = new ConcurrentHashMap<>();
+        this.frontiers = new ConcurrentHashMap<>();
+        this.seeds = new ConcurrentHashMap<>();
+        this.sharedPages = new ConcurrentHashMap<>();
+        this.inFlightLimiters = new ConcurrentHashMap<>();
+        this.statistics = new ConcurrentHashMap<>();
+        this.offlineRoots = new ConcurrentHashMap<>();
+        this.scopes = new ConcurrentHashMap<>();
+        this.allowances = new ConcurrentHashMap<>();
+        this.maxInFlightPerCrawl = maxInFlightPerCrawl;
+        this.executionMode = executionMode;
+        this.maxTasksPerCrawl = maxTasksPerCrawl;
+        this.taskPermits = new Semaphore(maxTasks);
+        this.visitedSetMode = visitedSetMode;
+        this.bloomExpectedUrls = bloomExpectedUrls;
+        this.bloomFalsePositiveRate = bloomFalsePositiveRate;
+        this.frontierMemoryEntries = frontierMemoryEntries;
+        this.frontierMaxDiskBytes = frontierMaxDiskBytes;
+        this.frontierSegmentBytes = frontierSegmentBytes;
+        this.frontierDirectory = Paths.get(frontierDirectory);
+        this.breadthFirst = breadthFirst;
+        this.sharedPagesMaxBytes = sharedPagesMaxBytes;
+        this.urlCanonicalizer = new UrlCanonicalizer(linkScope, ignoredQueryParams);
         this.pageClient = pageClient;
+        this.pageStore = pageStore;
         this.notifierService = notifierService;
         this.textParserService = textParserService;
-        this.executorService = Executors.newFixedThreadPool(
-                threadCount,
-                new ThreadFactoryBuilder()
-                        .setNameFormat(getClass().getSimpleName() + "-TaskExecutor-%d")
-                        .setPriority(Thread.NORM_PRIORITY)
-                        .setUncaughtExceptionHandler((t, e) -> LOGGER.error(e.getMessage(), e))
-                        .setDaemon(true)
-                        .build()
-        );
+        this.clusterService = clusterService;
+        this.memoryGovernor = memoryGovernor;
+        this.metrics = metrics;
+        this.executorService = executionMode == ExecutionMode.VIRTUAL
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(
+                        threadCount,
+                        new ThreadFactoryBuilder()
+                                .setNameFormat(getClass().getSimpleName() + "-TaskExecutor-%d")
+                                .setPriority(Thread.NORM_PRIORITY)
+                                .setUncaughtExceptionHandler((t, e) -> LOGGER.error(e.getMessage(), e))
+                                .setDaemon(true)
+                                .build()
+                );
+        if (executionMode == ExecutionMode.VIRTUAL) {
+            metrics.gauge("crawler.tasks.active", "Crawl tasks running on virtual threads",
+                    () -> maxTasks - taskPermits.availablePermits());
+            metrics.gauge("crawler.tasks.waiting", "Crawl tasks waiting for a task permit",
+                    taskPermits::getQueueLength);
+        } else {
+            metrics.monitor(executorService, "crawler-service");
+        }
+    }
+
+    public boolean canCrawlOffline() {
+        return pageStore.isEnabled();
+    }
+
+    /**
+     * @return the canonical form of a crawl's start URL, which its links are scoped against
+     */
+    public String canonicalize(String urlString) {
+        String canonical = urlCanonicalizer.canonicalize(urlString);
+        if (canonical == null) {
+            throw new ValidationException("urlString must be an http or https url");
+        }
+        return canonical;
     }
 
-    public void prepareForRoot(Root root, String urlSource, int depth) {
-        seen.putIfAbsent(root, new ConcurrentHashMap<>());
-        depths.putIfAbsent(root, depth);
-        baseUrls.putIfAbsent(root, urlSource);
+    /**
+     * A crawl with several seeds shares its frontier and fetches between them: each page is fetched and
+     * parsed once and counted for every seed that reaches it.
+     */
+    public void prepareForRoot(Root root, List<CrawlSeed> crawlSeeds, CrawlBudget budget, boolean offline) {
+        int maxDepth = 0;
+        for (CrawlSeed seed : crawlSeeds) {
+            maxDepth = Math.max(maxDepth, seed.depth);
+        }
+        boolean batch = crawlSeeds.size() > 1;
+        seen.putIfAbsent(root, batch ? new ReachMap() : newVisitedSet());
+        frontiers.putIfAbsent(root, new Frontier(maxDepth, frontierMemoryEntries, frontierMaxDiskBytes,
+                frontierSegmentBytes, frontierDirectory, breadthFirst));
+        allowances.putIfAbsent(root, new CrawlAllowance(budget));
+        seeds.putIfAbsent(root, crawlSeeds);
+        if (batch) {
+            sharedPages.putIfAbsent(root, new SharedPages(sharedPagesMaxBytes));
+        }
+        inFlightLimiters.putIfAbsent(root, new InFlightLimiter(maxInFlightPerCrawl));
+        offlineRoots.putIfAbsent(root, offline);
+        if (executionMode == ExecutionMode.VIRTUAL) {
+            scopes.putIfAbsent(root, new CrawlScope("crawl-" + root.rand, maxTasksPerCrawl, taskPermits,
+                    e -> notifierService.fail(root, e)));
+        }
+        statistics.putIfAbsent(root, new CrawlStatistics());
+        Map<String, Supplier<Number>> gauges = new LinkedHashMap<>();
+        gauges.put("crawler.crawl.visited.urls", () -> {
+            VisitedSet visited = seen.get(root);
+            return visited == null ? 0 : visited.size();
+        });
+        gauges.put("crawler.crawl.frontier.urls", () -> {
+            Frontier frontier = frontiers.get(root);
+            return frontier == null ? 0 : frontier.size();
+        });
+        gauges.put("crawler.crawl.distinct.words", () -> {
+            WordCounter wordCounter = textParserService.getResult(root);
+            return wordCounter == null ? 0 : wordCounter.size();
+        });
+        gauges.put("crawler.crawl.memory.bytes", () -> {
+            MemoryUsage usage = memoryGovernor.getUsage(root);
+            return usage == null ? 0 : usage.estimatedBytes;
+        });
+        metrics.rootStarted(root, gauges);
+        memoryGovernor.track(root, () -> memoryUsage(root));
     }
 
-    public Map<String, LongAdder> getCrawlResult(Root root) {
+    @Nullable
+    public WordCounter getCrawlResult(Root root) {
         return textParserService.getResult(root);
     }
 
-    public void startCrawl(Root root, String link) {
-        crawl(root, link, 1);
+    @Nullable
+    public CrawlStatistics getStatistics(Root root) {
+        return statistics.get(root);
+    }
+
+    /**
+     * @return whether the crawl's page or byte budget has turned away pages it would otherwise have fetched
+     */
+    public boolean isTruncated(Root root) {
+        CrawlAllowance allowance = allowances.get(root);
+        return allowance != null && allowance.isTruncated();
+    }
+
+    public void startCrawl(Root root) {
+        List<CrawlSeed> crawlSeeds = seeds.get(root);
+        if (crawlSeeds != null) {
+            for (int i = 0; i < crawlSeeds.size(); i++) {
+                crawl(root, crawlSeeds.get(i).urlString, 1, 1L << i);
+            }
+        }
+        notifierService.started(root);
+    }
+
+    /**
+     * Queues a link that another cluster node found and this node owns.
+     */
+    public void acceptLink(Root root, String link, int depth) {
+        crawl(root, link, depth, FIRST_SEED);
     }
 
     public void cleanForRoot(Root root) {
-        baseUrls.remove(root);
-        depths.remove(root);
+        seeds.remove(root);
+        sharedPages.remove(root);
         seen.remove(root);
+        Frontier frontier = frontiers.remove(root);
+        if (frontier != null) {
+            frontier.close();
+        }
+        inFlightLimiters.remove(root);
+        offlineRoots.remove(root);
+        allowances.remove(root);
+        CrawlScope scope = scopes.remove(root);
+        if (scope != null) {
+            scope.cancel();
+        }
+        statistics.remove(root);
+        metrics.rootFinished(root);
+        memoryGovernor.release(root);
     }
 
     @PreDestroy
@@ -89,86 +301,353 @@ public class CrawlerService {
         executorService.shutdownNow();
     }
 
-    private void crawl(Root root, String link, int currentDepth) {
-        ConcurrentMap<String, Boolean> objSeen = seen.get(root);
-        Boolean wasSeen = objSeen.putIfAbsent(link, true);
-        if (wasSeen != null || currentDepth > depths.get(root)) {
+    private boolean isActive(Root root) {
+        return frontiers.containsKey(root);
+    }
+
+    private Executor executorFor(Root root) {
+        CrawlScope scope = scopes.get(root);
+        return scope != null ? scope : executorService;
+    }
+
+    private MemoryUsage memoryUsage(Root root) {
+        VisitedSet visited = seen.get(root);
+        Frontier frontier = frontiers.get(root);
+        if (visited == null || frontier == null) {
+            return MemoryUsage.EMPTY;
+        }
+        SharedPages shared = sharedPages.get(root);
+        return MemoryUsage.estimate(visited.size(), visited.memoryBytes(), textParserService.distinctWords(root),
+                textParserService.wordsMemoryBytes(root), frontier.size(), frontier.sizeInMemory(),
+                shared == null ? 0 : shared.memoryBytes());
+    }
+
+    private VisitedSet newVisitedSet() {
+        return visitedSetMode == VisitedSetMode.BLOOM
+                ? new BloomVisitedSet(bloomExpectedUrls, bloomFalsePositiveRate)
+                : new FingerprintSet();
+    }
+
+    /**
+     * @param members bit mask of the seeds that reached the link
+     */
+    private void crawl(Root root, String link, int currentDepth, long members) {
+        VisitedSet visited = seen.get(root);
+        Frontier frontier = frontiers.get(root);
+        List<CrawlSeed> crawlSeeds = seeds.get(root);
+        CrawlStatistics crawlStatistics = statistics.get(root);
+        CrawlAllowance allowance = allowances.get(root);
+        if (visited == null || frontier == null || crawlSeeds == null || crawlStatistics == null
+                || allowance == null) {
+            return;
+        }
+        members = withinDepth(crawlSeeds, members, currentDepth);
+        if (members == 0) {
+            return;
+        }
+        members = visited.claim(UrlFingerprint.of(link), members);
+        if (members == 0 || !allowance.canQueue()) {
+            return;
+        }
+        if (!clusterService.isLocal(link)) {
+            clusterService.forward(root, link, currentDepth);
             return;
         }
         LOGGER.debug(">> Depth: [{}]  link: [{}]", currentDepth, link);
-        notifierService.increment(root);
+        if (!notifierService.pageQueued(root)) {
+            return;
+        }
+        if (!frontier.offer(link, currentDepth, members)) {
+            LOGGER.debug("Frontier is full, dropping link [{}]", link);
+            allowance.truncate();
+            crawlStatistics.linkDropped();
+            notifierService.pageDropped(root);
+            return;
+        }
+        dispatch(root);
+    }
 
-        executorService.execute(() -> {
-            Document doc;
-            try {
-                String dataFromUrl = getDataFromUrl(link);
-                doc = Jsoup.parse(dataFromUrl);
-            } catch (Exception e) {
-                LOGGER.debug("Exception for url [{}]: ", link, e);
-                notifierService.decrementPending(root);
+    private void dispatch(Root root) {
+        Frontier frontier = frontiers.get(root);
+        InFlightLimiter inFlightLimiter = inFlightLimiters.get(root);
+        CrawlAllowance allowance = allowances.get(root);
+        if (frontier == null || inFlightLimiter == null || allowance == null) {
+            return;
+        }
+        while (!frontier.isEmpty() && inFlightLimiter.tryAcquire()) {
+            FrontierEntry entry = frontier.poll();
+            if (entry == null) {
+                inFlightLimiter.release();
                 return;
             }
-            extractLinks(root, doc, currentDepth);
-            textParserService.parseText(root, doc, link);
-        });
+            if (!allowance.tryStartPage()) {
+                inFlightLimiter.release();
+                frontier.done(entry.depth);
+                notifierService.pageDropped(root);
+                dropQueued(root, frontier);
+                return;
+            }
+            CrawlTracker.Page page = notifierService.takePage(root);
+            if (page == null) {
+                inFlightLimiter.release();
+                frontier.done(entry.depth);
+                return;
+            }
+            SharedPages shared = sharedPages.get(root);
+            CompletableFuture<SharedPages.ParsedPage> parsed = shared == null ? null : shared.join(entry.url);
+            if (parsed != null) {
+                inFlightLimiter.release();
+                share(root, frontier, entry, parsed, page);
+            } else {
+                fetch(root, frontier, allowance, entry, inFlightLimiter, page, shared);
+            }
+        }
     }
 
-    private void extractLinks(Root root, Document doc, int currentDepth) {
-        Elements elements = doc.select("a");
-        for (Element element : elements) {
-            String link = element.attributes().get("href");
-            if (link != null && !link.equals("")) {
-                link = prepareLink(root, link);
-                if (link != null) {
-                    crawl(root, link, currentDepth + 1);
+    /**
+     * Counts a page that another seed of the batch crawl has fetched for the seeds of {@code entry} and follows
+     * its links on their behalf, once the fetch is done.
+     */
+    private void share(Root root, Frontier frontier, FrontierEntry entry,
+                       CompletableFuture<SharedPages.ParsedPage> parsed, CrawlTracker.Page page) {
+        parsed.whenCompleteAsync((parsedPage, e) -> {
+            try {
+                List<CrawlSeed> crawlSeeds = seeds.get(root);
+                CrawlAllowance allowance = allowances.get(root);
+                if (parsedPage != null && parsedPage.words != null && crawlSeeds != null && allowance != null) {
+                    page.moveTo(CrawlTracker.Stage.COUNTING);
+                    textParserService.countForSeeds(root, parsedPage.words, entry.members);
+                    boolean followsLinks = withinDepth(crawlSeeds, entry.members, entry.depth + 1) != 0;
+                    if (followsLinks && memoryGovernor.isOverLimit()) {
+                        allowance.truncate();
+                    } else if (followsLinks) {
+                        for (String link : parsedPage.links) {
+                            crawl(root, link, entry.depth + 1, inScope(crawlSeeds, entry.members, link));
+                        }
+                    }
                 }
+            } finally {
+                frontier.done(entry.depth);
+                page.done();
             }
+            dispatch(root);
+        }, executorFor(root));
+    }
+
+    /**
+     * Gives up on the queued pages once the budget is used up, so the crawl completes with the pages already
+     * in flight.
+     */
+    private void dropQueued(Root root, Frontier frontier) {
+        for (long dropped = frontier.clear(); dropped > 0; dropped--) {
+            notifierService.pageDropped(root);
         }
     }
 
-    private String getDataFromUrl(String url) {
-        BufferedReader rd = null;
-        try {
-            HttpEntity httpEntity = pageClient.getPage(url);
-            rd = new BufferedReader(new InputStreamReader(httpEntity.getContent()));
-            String line;
-            StringBuilder sb = new StringBuilder();
-            while ((line = rd.readLine()) != null) {
-                sb.append(line);
+    /**
+     * @param shared the pages of the batch crawl this fetch is reported to, or {@code null} for a single seed
+     */
+    private void fetch(Root root, Frontier frontier, CrawlAllowance allowance, FrontierEntry entry,
+                       InFlightLimiter inFlightLimiter, CrawlTracker.Page page, @Nullable SharedPages shared) {
+        String link = entry.url;
+        int currentDepth = entry.depth;
+        PageText pageText = shared == null || shared.countOnce(link)
+                ? textParserService.newPageText(root)
+                : textParserService.newRecountedPageText(root);
+        CrawlStatistics crawlStatistics = statistics.get(root);
+        List<CrawlSeed> crawlSeeds = seeds.get(root);
+        if (pageText == null || crawlStatistics == null || crawlSeeds == null) {
+            if (shared != null) {
+                shared.fetched(link, SharedPages.ParsedPage.FAILED);
             }
-            return sb.toString();
-        } catch (Exception t) {
-            throw new RuntimeException("Could not fetch data from " + url);
-        } finally {
-            if (rd != null) {
-                try {
-                    rd.close();
-                } catch (IOException e) {
-                    LOGGER.debug("", e);
+            inFlightLimiter.release();
+            frontier.done(currentDepth);
+            page.done();
+            return;
+        }
+        Collection<String> links = shared == null ? null : new LinkedHashSet<>();
+        boolean followsLinks = withinDepth(crawlSeeds, entry.members, currentDepth + 1) != 0;
+        page.moveTo(CrawlTracker.Stage.FETCHING);
+        HtmlTokenizer tokenizer = new HtmlTokenizer(new HtmlHandler() {
+            private String base = link;
+            private boolean linksHeldBack;
+
+            @Override
+            public void onBase(String href) {
+                String resolved = urlCanonicalizer.resolve(link, href);
+                if (resolved != null) {
+                    base = resolved;
                 }
             }
-        }
-    }
 
-    @Nullable
-    private String prepareLink(Root root, String link) {
-        try {
-            URI uri = new URI(link);
-            String prefix = baseUrls.get(root);
-            if (uri.isAbsolute()) {
-                if (link.startsWith(prefix)) {
-                    return link;
+            /**
+             * Holds back the rest of the page's links once the crawls are over the memory limit; they are still
+             * collected for the seeds that reach the page later.
+             */
+            @Override
+            public void onLink(String href) {
+                if (followsLinks && !linksHeldBack && memoryGovernor.isOverLimit()) {
+                    linksHeldBack = true;
+                    allowance.truncate();
                 }
-            } else if (link.startsWith("//")) {
-                if (link.startsWith("//" + prefix)) {
-                    return link;
+                extractLink(root, base, href, currentDepth, linksHeldBack ? 0 : entry.members, links);
+            }
+
+            @Override
+            public void onText(char[] chars, int offset, int length) {
+                if (!isActive(root)) {
+                    throw new CancellationException("Crawl cancelled: " + root.urlString);
                 }
-            } else if (!link.startsWith("#")) {
-                return baseUrls.get(root) + link;
+                pageText.append(chars, offset, length);
+            }
+        });
+        TrackingContentHandler handler = new TrackingContentHandler(new PageDecoder(tokenizer), page,
+                allowance);
+        load(root, link, handler).whenComplete((response, e) -> {
+            inFlightLimiter.release();
+            try {
+                if (e != null) {
+                    LOGGER.debug("Exception for url [{}]: ", link, e);
+                    metrics.failed(handler.parseFailed ? FetchFailure.PARSE : FetchFailure.of(e));
+                    crawlStatistics.pageFailed();
+                    if (shared != null) {
+                        shared.fetched(link, SharedPages.ParsedPage.FAILED);
+                    }
+                } else {
+                    metrics.pageParsed(handler.parseNanos);
+                    page.moveTo(CrawlTracker.Stage.COUNTING);
+                    long countStartNanos = System.nanoTime();
+                    WordCountTable words = pageText.finish();
+                    textParserService.countForSeeds(root, words, entry.members);
+                    metrics.pageCounted(System.nanoTime() - countStartNanos);
+                    crawlStatistics.pageFetched();
+                    if (shared != null) {
+                        shared.fetched(link, new SharedPages.ParsedPage(words, links));
+                    }
+                }
+            } finally {
+                frontier.done(currentDepth);
+                page.done();
+            }
+            dispatch(root);
+        });
+    }
+
+    private CompletableFuture<HttpResponse> load(Root root, String link, PageContentHandler handler) {
+        boolean offline = offlineRoots.getOrDefault(root, false);
+        StoredPage stored = pageStore.find(link);
+        if (stored != null && (offline || pageStore.isFresh(stored))) {
+            return pageStore.replay(stored, handler, executorFor(root));
+        }
+        if (offline) {
+            CompletableFuture<HttpResponse> missing = new CompletableFuture<>();
+            missing.completeExceptionally(new FileNotFoundException("Page is not stored: " + link));
+            return missing;
+        }
+        return pageClient.getPage(link, pageStore.recording(link, handler), executorFor(root));
+    }
+
+    /**
+     * @param links collects every link of the page for the seeds that reach it later, if not {@code null}
+     */
+    private void extractLink(Root root, String base, String href, int currentDepth, long members,
+                             @Nullable Collection<String> links) {
+        List<CrawlSeed> crawlSeeds = seeds.get(root);
+        String link = urlCanonicalizer.resolve(base, href);
+        if (crawlSeeds == null || link == null) {
+            return;
+        }
+        if (links != null) {
+            links.add(link);
+        }
+        crawl(root, link, currentDepth + 1, inScope(crawlSeeds, members, link));
+    }
+
+    /**
+     * @return the members whose seed's scope covers the link
+     */
+    private long inScope(List<CrawlSeed> crawlSeeds, long members, String link) {
+        long inScope = 0;
+        for (long bits = members; bits != 0; bits &= bits - 1) {
+            int seed = Long.numberOfTrailingZeros(bits);
+            if (urlCanonicalizer.isInScope(crawlSeeds.get(seed).urlString, link)) {
+                inScope |= 1L << seed;
+            }
+        }
+        return inScope;
+    }
+
+    /**
+     * @return the members whose seed's depth reaches {@code depth}
+     */
+    private static long withinDepth(List<CrawlSeed> crawlSeeds, long members, int depth) {
+        long within = 0;
+        for (long bits = members; bits != 0; bits &= bits - 1) {
+            int seed = Long.numberOfTrailingZeros(bits);
+            if (depth <= crawlSeeds.get(seed).depth) {
+                within |= 1L << seed;
+            }
+        }
+        return within;
+    }
+
+    /**
+     * Moves the page to {@link CrawlTracker.Stage#PARSING} once the response arrives, charges its content to
+     * the crawl's budget and measures the time spent in the delegate. Calls never overlap and are ordered by
+     * the response consumer, so the plain fields are safe to read once loading has completed.
+     */
+    private static class TrackingContentHandler implements PageContentHandler {
+        private final PageContentHandler delegate;
+        private final CrawlTracker.Page page;
+        private final CrawlAllowance allowance;
+        private long parseNanos;
+        private boolean parseFailed;
+
+        TrackingContentHandler(PageContentHandler delegate, CrawlTracker.Page page, CrawlAllowance allowance) {
+            this.delegate = delegate;
+            this.page = page;
+            this.allowance = allowance;
+        }
+
+        @Override
+        public void onResponse(HttpResponse response, @Nullable Charset charset) throws IOException {
+            page.moveTo(CrawlTracker.Stage.PARSING);
+            long startNanos = System.nanoTime();
+            try {
+                delegate.onResponse(response, charset);
+            } catch (IOException | RuntimeException e) {
+                parseFailed = !(e instanceof CancellationException);
+                throw e;
+            } finally {
+                parseNanos += System.nanoTime() - startNanos;
+            }
+        }
+
+        @Override
+        public void onContent(ByteBuffer content) throws IOException {
+            allowance.addBytes(content.remaining());
+            long startNanos = System.nanoTime();
+            try {
+                delegate.onContent(content);
+            } catch (IOException | RuntimeException e) {
+                parseFailed = !(e instanceof CancellationException);
+                throw e;
+            } finally {
+                parseNanos += System.nanoTime() - startNanos;
+            }
+        }
+
+        @Override
+        public void onComplete() throws IOException {
+            long startNanos = System.nanoTime();
+            try {
+                delegate.onComplete();
+            } catch (IOException | RuntimeException e) {
+                parseFailed = !(e instanceof CancellationException);
+                throw e;
+            } finally {
+                parseNanos += System.nanoTime() - startNanos;
             }
-        } catch (Exception e) {
-            LOGGER.debug("", e);
         }
-        return null;
     }
 }
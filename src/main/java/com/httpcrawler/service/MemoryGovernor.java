@@ -0,0 +1,201 @@
+package com.httpcrawler.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.httpcrawler.data.MemoryUsage;
+import com.httpcrawler.data.Root;
+import com.httpcrawler.metrics.CrawlMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.PreDestroy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the estimated heap use of all running crawls under one limit. A new crawl counts as using at least its
+ * reservation, and is admitted in arrival order once there is room for it; it waits in line up to the admission
+ * timeout and is rejected after that, or at once if the line is full. While the running crawls are over the
+ * limit, pages hold back their links instead of queueing them, so crawls stop growing and finish with what they
+ * have queued.
+ * <p>
+ * Usage is sampled every {@code sample-interval-millis} from the suppliers the crawls {@link #track}.
+ */
+@Service
+@ThreadSafe
+@ParametersAreNonnullByDefault
+public class MemoryGovernor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MemoryGovernor.class);
+
+    private final long maxBytes;
+    private final long reservationBytes;
+    private final long admissionTimeoutMillis;
+    private final int maxWaitingCrawls;
+    private final long retryAfterSeconds;
+    private final ConcurrentMap<Root, Supplier<MemoryUsage>> trackers;
+    private final ConcurrentMap<Root, MemoryUsage> usages;
+    private final ArrayDeque<Object> waiting;
+    private final ReentrantLock lock;
+    private final Condition usageChanged;
+    private final ScheduledExecutorService executorService;
+
+    private volatile long usedBytes;
+
+    public MemoryGovernor(
+            @Value("${memory-governor.max-bytes:0}") long maxBytes,
+            @Value("${memory-governor.max-heap-fraction:0.5}") double maxHeapFraction,
+            @Value("${memory-governor.crawl-reservation-bytes:16777216}") long reservationBytes,
+            @Value("${memory-governor.admission-timeout-millis:10000}") long admissionTimeoutMillis,
+            @Value("${memory-governor.max-waiting-crawls:32}") int maxWaitingCrawls,
+            @Value("${memory-governor.retry-after-seconds:5}") long retryAfterSeconds,
+            @Value("${memory-governor.sample-interval-millis:100}") long sampleIntervalMillis,
+            CrawlMetrics metrics
+    ) {
+        this.maxBytes = maxBytes > 0 ? maxBytes : (long) (Runtime.getRuntime().maxMemory() * maxHeapFraction);
+        this.reservationBytes = reservationBytes;
+        this.admissionTimeoutMillis = admissionTimeoutMillis;
+        this.maxWaitingCrawls = maxWaitingCrawls;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.trackers = new ConcurrentHashMap<>();
+        this.usages = new ConcurrentHashMap<>();
+        this.waiting = new ArrayDeque<>();
+        this.lock = new ReentrantLock();
+        this.usageChanged = lock.newCondition();
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(
+                1,
+                new ThreadFactoryBuilder()
+                        .setNameFormat(getClass().getSimpleName() + "-TaskExecutor-%d")
+                        .setPriority(Thread.NORM_PRIORITY)
+                        .setUncaughtExceptionHandler((t, e) -> LOGGER.error(e.getMessage(), e))
+                        .setDaemon(true)
+                        .build()
+        );
+        this.executorService = scheduler;
+        scheduler.scheduleWithFixedDelay(this::sample, sampleIntervalMillis, sampleIntervalMillis,
+                TimeUnit.MILLISECONDS);
+        metrics.gauge("memory-governor.limit.bytes", "Limit on the estimated heap use of running crawls",
+                () -> this.maxBytes);
+        metrics.gauge("memory-governor.used.bytes", "Estimated heap use of running crawls", () -> usedBytes);
+        metrics.gauge("memory-governor.waiting.crawls", "Crawls waiting to be admitted", this::waitingCrawls);
+    }
+
+    /**
+     * Waits until there is room for another crawl.
+     *
+     * @throws CrawlRejectedException if the line of waiting crawls is full or there is no room in time
+     */
+    public void admit(Root root) {
+        Object ticket = new Object();
+        lock.lock();
+        try {
+            if (waiting.size() >= maxWaitingCrawls) {
+                throw rejected(root);
+            }
+            waiting.add(ticket);
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(admissionTimeoutMillis);
+            while (waiting.peekFirst() != ticket || !hasRoomForCrawl()) {
+                if (remainingNanos <= 0) {
+                    waiting.remove(ticket);
+                    usageChanged.signalAll();
+                    throw rejected(root);
+                }
+                remainingNanos = usageChanged.awaitNanos(remainingNanos);
+            }
+            waiting.pollFirst();
+            usages.put(root, MemoryUsage.EMPTY);
+            usedBytes += reservationBytes;
+            usageChanged.signalAll();
+        } catch (InterruptedException e) {
+            waiting.remove(ticket);
+            usageChanged.signalAll();
+            Thread.currentThread().interrupt();
+            throw rejected(root);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts sampling the usage of a crawl, which counts against the limit whether or not it was admitted here.
+     */
+    public void track(Root root, Supplier<MemoryUsage> usage) {
+        trackers.put(root, usage);
+        usages.putIfAbsent(root, MemoryUsage.EMPTY);
+    }
+
+    public void release(Root root) {
+        trackers.remove(root);
+        if (usages.remove(root) != null) {
+            sample();
+        }
+    }
+
+    /**
+     * Tells whether the running crawls were over the limit at the last sample; never blocks.
+     */
+    public boolean isOverLimit() {
+        return usedBytes > maxBytes;
+    }
+
+    @Nullable
+    public MemoryUsage getUsage(Root root) {
+        return usages.get(root);
+    }
+
+    @PreDestroy
+    protected void stop() {
+        executorService.shutdownNow();
+    }
+
+    private boolean hasRoomForCrawl() {
+        return usages.isEmpty() || usedBytes + reservationBytes <= maxBytes;
+    }
+
+    private int waitingCrawls() {
+        lock.lock();
+        try {
+            return waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private CrawlRejectedException rejected(Root root) {
+        LOGGER.warn("Rejecting crawl of [{}], running crawls use about {} of {} bytes", root.urlString, usedBytes,
+                maxBytes);
+        return new CrawlRejectedException("Too many crawls are running, retry in " + retryAfterSeconds + " seconds",
+                retryAfterSeconds);
+    }
+
+    private void sample() {
+        long total = 0;
+        for (Map.Entry<Root, MemoryUsage> entry : usages.entrySet()) {
+            Supplier<MemoryUsage> tracker = trackers.get(entry.getKey());
+            MemoryUsage usage = entry.getValue();
+            if (tracker != null) {
+                usage = tracker.get();
+                usages.replace(entry.getKey(), usage);
+            }
+            total += Math.max(usage.estimatedBytes, reservationBytes);
+        }
+        lock.lock();
+        try {
+            usedBytes = total;
+            usageChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -1,60 +1,88 @@
 package com.httpcrawler.service;
 
+import com.httpcrawler.data.CrawlTracker;
 import com.httpcrawler.data.Root;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.LongAdder;
 
 @Service
 @ParametersAreNonnullByDefault
 public class NotifierService {
-    private static final Logger LOGGER = LoggerFactory.getLogger(NotifierService.class);
-
-    private final ConcurrentMap<Root, LongAdder> pending;
-    private final ConcurrentMap<Root, Object> locks;
+    private final ConcurrentMap<Root, CrawlTracker> trackers;
 
     public NotifierService() {
-        this.pending = new ConcurrentHashMap<>();
-        this.locks = new ConcurrentHashMap<>();
+        this.trackers = new ConcurrentHashMap<>();
     }
 
     public void prepareForRoot(Root root) {
-        pending.putIfAbsent(root, new LongAdder());
-        locks.putIfAbsent(root, new Object());
+        trackers.putIfAbsent(root, new CrawlTracker());
+    }
+
+    public boolean pageQueued(Root root) {
+        CrawlTracker tracker = trackers.get(root);
+        if (tracker == null) {
+            return false;
+        }
+        tracker.queued();
+        return true;
     }
 
-    public void increment(Root root) {
-        pending.get(root).increment();
+    public void pageDropped(Root root) {
+        CrawlTracker tracker = trackers.get(root);
+        if (tracker != null) {
+            tracker.dropped();
+        }
+    }
+
+    @Nullable
+    public CrawlTracker.Page takePage(Root root) {
+        CrawlTracker tracker = trackers.get(root);
+        return tracker == null ? null : tracker.take();
     }
 
-    public void decrementPending(Root root) {
-        pending.get(root).decrement();
-        if (pending.get(root).longValue() == 0L) {
-            Object lock = locks.get(root);
-            synchronized (lock) {
-                lock.notifyAll();
-            }
+    public void started(Root root) {
+        CrawlTracker tracker = trackers.get(root);
+        if (tracker != null) {
+            tracker.started();
         }
     }
 
-    public void waitWorkFinish(Root root) {
-        Object lock = locks.get(root);
-        synchronized (lock) {
-            try {
-                lock.wait();
-            } catch (InterruptedException e) {
-                LOGGER.error("Join was interrupted. Result not finished");
-            }
+    public void fail(Root root, Throwable e) {
+        CrawlTracker tracker = trackers.get(root);
+        if (tracker != null) {
+            tracker.fail(e);
         }
     }
 
-    public void cleanForRoot(Root obj) {
-        locks.remove(obj);
-        pending.remove(obj);
+    public CompletableFuture<Void> completion(Root root) {
+        CrawlTracker tracker = trackers.get(root);
+        if (tracker == null) {
+            CompletableFuture<Void> cancelled = new CompletableFuture<>();
+            cancelled.cancel(false);
+            return cancelled;
+        }
+        return tracker.completion();
+    }
+
+    public long getPending(Root root) {
+        CrawlTracker tracker = trackers.get(root);
+        return tracker == null ? 0L : tracker.pending();
+    }
+
+    public long getInStage(Root root, CrawlTracker.Stage stage) {
+        CrawlTracker tracker = trackers.get(root);
+        return tracker == null ? 0L : tracker.inStage(stage);
+    }
+
+    public void cleanForRoot(Root root) {
+        CrawlTracker tracker = trackers.remove(root);
+        if (tracker != null) {
+            tracker.cancel();
+        }
     }
-}
\ No newline at end of file
+}
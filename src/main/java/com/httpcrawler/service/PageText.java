@@ -0,0 +1,42 @@
+package com.httpcrawler.service;
+
+import com.httpcrawler.data.WordCountTable;
+import com.httpcrawler.data.WordCounter;
+import com.httpcrawler.parser.WordTokenizer;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+public class PageText {
+
+    @Nullable
+    private final WordCounter wordCounter;
+    private final WordCountTable words;
+    private final WordTokenizer tokenizer;
+
+    PageText(@Nullable WordCounter wordCounter, boolean caseFolding) {
+        this.wordCounter = wordCounter;
+        this.words = new WordCountTable();
+        this.tokenizer = new WordTokenizer(words, caseFolding);
+    }
+
+    public void append(char[] chars, int offset, int length) {
+        tokenizer.append(chars, offset, length);
+    }
+
+    /**
+     * Counts the page's words into the crawl's result, unless it has them already.
+     *
+     * @return the page's own word counts
+     */
+    public WordCountTable finish() {
+        tokenizer.finish();
+        if (wordCounter != null) {
+            wordCounter.addAll(words);
+        }
+        return words;
+    }
+}
@@ -0,0 +1,129 @@
+package com.httpcrawler.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.httpcrawler.data.FingerprintSet;
+import com.httpcrawler.data.UrlFingerprint;
+import com.httpcrawler.data.WordCountTable;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pages of a batch crawl that have been fetched and parsed, so that a seed which reaches a page only after
+ * another seed did gets its words and links without fetching it again. Parsed pages are kept up to
+ * {@code maxBytes} by an estimate of their size; one evicted before a later seed reaches it is fetched again,
+ * and only counted for that seed.
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+class SharedPages {
+
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+    private static final int WORD_BYTES = 64;
+    private static final int LINK_OVERHEAD_BYTES = 48;
+
+    private final ConcurrentMap<String, CompletableFuture<ParsedPage>> fetches;
+    private final Cache<String, ParsedPage> pages;
+    private final FingerprintSet counted;
+    private final AtomicLong pagesBytes;
+
+    SharedPages(long maxBytes) {
+        this.fetches = new ConcurrentHashMap<>();
+        this.counted = new FingerprintSet();
+        this.pagesBytes = new AtomicLong();
+        this.pages = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .<String, ParsedPage>weigher(SharedPages::weigh)
+                .removalListener((RemovalListener<String, ParsedPage>) removal ->
+                        pagesBytes.addAndGet(-weigh(removal.getKey(), removal.getValue())))
+                .build();
+    }
+
+    /**
+     * Makes the caller the one to fetch the URL, unless it has been fetched or is being fetched already.
+     *
+     * @return the page to share, or {@code null} if the caller has to fetch it and report it to {@link #fetched}
+     */
+    @Nullable
+    CompletableFuture<ParsedPage> join(String url) {
+        ParsedPage page = pages.getIfPresent(url);
+        if (page != null) {
+            return CompletableFuture.completedFuture(page);
+        }
+        CompletableFuture<ParsedPage> fetch = new CompletableFuture<>();
+        CompletableFuture<ParsedPage> running = fetches.putIfAbsent(url, fetch);
+        if (running != null) {
+            return running;
+        }
+        page = pages.getIfPresent(url);
+        if (page != null) {
+            fetches.remove(url, fetch);
+            return CompletableFuture.completedFuture(page);
+        }
+        return null;
+    }
+
+    /**
+     * @return {@code true} the first time a URL is fetched, when it is counted for the whole batch
+     */
+    boolean countOnce(String url) {
+        return counted.add(UrlFingerprint.of(url));
+    }
+
+    /**
+     * @return the estimated heap held by the parsed pages and the set of counted URLs
+     */
+    long memoryBytes() {
+        return pagesBytes.get() + counted.memoryBytes();
+    }
+
+    void fetched(String url, ParsedPage page) {
+        pagesBytes.addAndGet(weigh(url, page));
+        pages.put(url, page);
+        CompletableFuture<ParsedPage> fetch = fetches.remove(url);
+        if (fetch != null) {
+            fetch.complete(page);
+        }
+    }
+
+    private static int weigh(String url, ParsedPage page) {
+        return ENTRY_OVERHEAD_BYTES + url.length() + page.weight();
+    }
+
+    @Immutable
+    @ParametersAreNonnullByDefault
+    static class ParsedPage {
+
+        static final ParsedPage FAILED = new ParsedPage(null, Collections.emptyList());
+
+        /**
+         * Never modified once shared, or {@code null} if the page could not be fetched.
+         */
+        @Nullable
+        final WordCountTable words;
+        final Collection<String> links;
+
+        ParsedPage(@Nullable WordCountTable words, Collection<String> links) {
+            this.words = words;
+            this.links = links;
+        }
+
+        private int weight() {
+            long weight = words == null ? 0 : (long) words.size() * WORD_BYTES;
+            for (String link : links) {
+                weight += LINK_OVERHEAD_BYTES + link.length();
+            }
+            return (int) Math.min(weight, Integer.MAX_VALUE);
+        }
+    }
+}
@@ -1,98 +1,132 @@
 package com.httpcrawler.service;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.httpcrawler.data.ApproximateWordFrequencies;
+import com.httpcrawler.data.CountingMode;
+import com.httpcrawler.data.CountingOptions;
 import com.httpcrawler.data.Root;
-import org.jsoup.nodes.Document;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.httpcrawler.data.WordCountTable;
+import com.httpcrawler.data.WordCounter;
+import com.httpcrawler.data.WordFrequencies;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
-import javax.annotation.PreDestroy;
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.LongAdder;
 
 @Service
 @ParametersAreNonnullByDefault
 public class TextParserService {
-    private static final Logger LOGGER = LoggerFactory.getLogger(TextParserService.class);
 
-    public static final String WORDS_REGEX = "[^A-Za-zА-Яа-яÃƒâ€¦Ãƒâ€žÃƒâ€“a-zÃƒÂ¥ÃƒÂ¤ÃƒÂ¶]+";
-
-    private final ConcurrentMap<Root, ConcurrentMap<String, LongAdder>> wordFrequencies;
-    private final NotifierService notifierService;
-    private final ExecutorService executorService;
+    private final ConcurrentMap<Root, WordCounter> wordFrequencies;
+    private final ConcurrentMap<Root, WordCounter[]> seedFrequencies;
+    private final boolean caseFolding;
+    private final int shardCount;
+    private final int topCount;
 
     public TextParserService(
-            @Value("${text-parser-service.thread-count}") int threadCount,
-            NotifierService notifierService
+            @Value("${text-parser-service.case-folding:false}") boolean caseFolding,
+            @Value("${text-parser-service.shard-count:16}") int shardCount,
+            @Value("${top-word-frequency-service.top-count}") int topCount
     ) {
         this.wordFrequencies = new ConcurrentHashMap<>();
-        this.notifierService = notifierService;
-        this.executorService = Executors.newFixedThreadPool(
-                threadCount,
-                new ThreadFactoryBuilder()
-                        .setNameFormat(getClass().getSimpleName() + "-TaskExecutor-%d")
-                        .setPriority(Thread.NORM_PRIORITY)
-                        .setUncaughtExceptionHandler((t, e) -> LOGGER.error(e.getMessage(), e))
-                        .setDaemon(true)
-                        .build()
-        );
+        this.seedFrequencies = new ConcurrentHashMap<>();
+        this.caseFolding = caseFolding;
+        this.shardCount = shardCount;
+        this.topCount = topCount;
+    }
+
+    public void prepareForRoot(Root root, CountingOptions options) {
+        wordFrequencies.putIfAbsent(root, newWordCounter(options));
+    }
+
+    /**
+     * Keeps a result per seed of a batch crawl besides the combined one, which counts every page once.
+     */
+    public void prepareForSeeds(Root root, CountingOptions options, int seedCount) {
+        WordCounter[] wordCounters = new WordCounter[seedCount];
+        for (int i = 0; i < seedCount; i++) {
+            wordCounters[i] = newWordCounter(options);
+        }
+        seedFrequencies.putIfAbsent(root, wordCounters);
+    }
+
+    @Nullable
+    public PageText newPageText(Root root) {
+        WordCounter wordCounter = wordFrequencies.get(root);
+        return wordCounter == null ? null : new PageText(wordCounter, caseFolding);
     }
 
-    public void prepareForRoot(Root root) {
-        wordFrequencies.putIfAbsent(root, new ConcurrentHashMap<>());
+    /**
+     * @return text of a page the crawl's result has counted already, which is only counted for seeds
+     */
+    @Nullable
+    public PageText newRecountedPageText(Root root) {
+        return wordFrequencies.containsKey(root) ? new PageText(null, caseFolding) : null;
     }
 
-    public void parseText(Root root, Document doc, String url) {
-        executorService.execute(() -> doParseText(root, doc, url));
+    /**
+     * Adds a page's words to the results of the seeds in the {@code members} bit mask.
+     */
+    public void countForSeeds(Root root, WordCountTable words, long members) {
+        WordCounter[] wordCounters = seedFrequencies.get(root);
+        if (wordCounters == null) {
+            return;
+        }
+        for (long bits = members; bits != 0; bits &= bits - 1) {
+            wordCounters[Long.numberOfTrailingZeros(bits)].addAll(words);
+        }
     }
 
     public void cleanForRoot(Root obj) {
         wordFrequencies.remove(obj);
+        seedFrequencies.remove(obj);
+    }
+
+    @Nullable
+    public WordCounter getResult(Root root) {
+        return wordFrequencies.get(root);
     }
 
-    public Map<String, LongAdder> getResult(Root root) {
-        return new HashMap<>(wordFrequencies.get(root));
+    @Nullable
+    public WordCounter[] getSeedResults(Root root) {
+        return seedFrequencies.get(root);
     }
 
-    @PreDestroy
-    protected void stop() {
-        executorService.shutdownNow();
+    /**
+     * @return the distinct words of the crawl's result and of each of its seeds
+     */
+    public long distinctWords(Root root) {
+        WordCounter wordCounter = wordFrequencies.get(root);
+        long distinctWords = wordCounter == null ? 0 : wordCounter.size();
+        WordCounter[] wordCounters = seedFrequencies.get(root);
+        if (wordCounters != null) {
+            for (WordCounter seedCounter : wordCounters) {
+                distinctWords += seedCounter.size();
+            }
+        }
+        return distinctWords;
     }
 
-    private void doParseText(Root root, Document doc, String url) {
-        String text = doc.body().text();
-        try (
-                BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)))
-                )
-        ) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] words = line.split(WORDS_REGEX);
-                for (String word : words) {
-                    if ("".equals(word)) {
-                        continue;
-                    }
-                    wordFrequencies.get(root).computeIfAbsent(word, x -> new LongAdder()).increment();
-                }
+    /**
+     * @return the estimated heap held by the crawl's result and the results of its seeds
+     */
+    public long wordsMemoryBytes(Root root) {
+        WordCounter wordCounter = wordFrequencies.get(root);
+        long bytes = wordCounter == null ? 0 : wordCounter.memoryBytes();
+        WordCounter[] wordCounters = seedFrequencies.get(root);
+        if (wordCounters != null) {
+            for (WordCounter seedCounter : wordCounters) {
+                bytes += seedCounter.memoryBytes();
             }
-        } catch (IOException e) {
-            LOGGER.debug("Text parsing exception for [{}]", url, e);
-        } finally {
-            notifierService.decrementPending(root);
         }
+        return bytes;
+    }
+
+    private WordCounter newWordCounter(CountingOptions options) {
+        return options.mode == CountingMode.APPROXIMATE
+                ? new ApproximateWordFrequencies(options.epsilon, options.delta, topCount)
+                : new WordFrequencies(shardCount);
     }
 }
@@ -1,25 +1,54 @@
 package com.httpcrawler.service;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.httpcrawler.cluster.ClusterHandler;
+import com.httpcrawler.cluster.ClusterService;
+import com.httpcrawler.data.BatchTopWords;
+import com.httpcrawler.data.CountMinSketch;
+import com.httpcrawler.data.CountingMode;
+import com.httpcrawler.data.CountingOptions;
+import com.httpcrawler.data.CrawlBudget;
+import com.httpcrawler.data.CrawlJob;
+import com.httpcrawler.data.CrawlKey;
+import com.httpcrawler.data.CrawlProgress;
+import com.httpcrawler.data.CrawlSeed;
+import com.httpcrawler.data.CrawlStatistics;
+import com.httpcrawler.data.CrawlStatus;
+import com.httpcrawler.data.CrawlTracker;
+import com.httpcrawler.data.ExecutionMode;
+import com.httpcrawler.data.MemoryUsage;
 import com.httpcrawler.data.Root;
+import com.httpcrawler.data.TopKSelector;
+import com.httpcrawler.data.TopWords;
+import com.httpcrawler.data.WordCounter;
+import com.httpcrawler.metrics.CrawlMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.annotation.PreDestroy;
+import javax.validation.ValidationException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
 @ParametersAreNonnullByDefault
@@ -27,26 +56,60 @@ public class TopWordFrequencyService {
     private static final Logger LOGGER = LoggerFactory.getLogger(TopWordFrequencyService.class);
 
     private static final int RANDOM_MAX = 1_000_000;
+    private static final int MAX_BATCH_SEEDS = Long.SIZE;
+    private static final long RUNNING_CRAWL_RETRY_AFTER_SECONDS = 1;
+    private static final long MAX_BATCH_SKETCH_COUNTERS = 4 * CountMinSketch.MAX_COUNTERS;
 
     private final int topCount;
+    private final long parallelSelectThreshold;
+    private final long jobRetentionMillis;
+    private final long crawlTimeoutMillis;
+    private final ConcurrentMap<String, CrawlJob> jobs;
+    private final ConcurrentMap<CrawlKey, CompletableFuture<TopWords>> runningCrawls;
+    private final Cache<CrawlKey, TopWords> resultCache;
     private final CrawlerService crawlerService;
     private final TextParserService textParserService;
     private final NotifierService notifierService;
+    private final ClusterService clusterService;
+    private final MemoryGovernor memoryGovernor;
+    private final CrawlMetrics metrics;
     private final ExecutorService executorService;
 
     public TopWordFrequencyService(
+            @Value("${execution-mode:POOLS}") ExecutionMode executionMode,
             @Value("${top-word-frequency-service.top-count}") int topCount,
             @Value("${top-word-frequency-service.thread-count}") int threadCount,
+            @Value("${top-word-frequency-service.parallel-select-threshold:1000000}") long parallelSelectThreshold,
+            @Value("${top-word-frequency-service.job-retention-seconds:600}") long jobRetentionSeconds,
+            @Value("${top-word-frequency-service.crawl-timeout-seconds:300}") long crawlTimeoutSeconds,
+            @Value("${top-word-frequency-service.result-cache-ttl-seconds:300}") long resultCacheTtlSeconds,
+            @Value("${top-word-frequency-service.result-cache-max-entries:100}") long resultCacheMaxEntries,
             CrawlerService crawlerService,
             TextParserService textParserService,
-            NotifierService notifierService
+            NotifierService notifierService,
+            ClusterService clusterService,
+            MemoryGovernor memoryGovernor,
+            CrawlMetrics metrics
     ) {
         this.topCount = topCount;
+        this.parallelSelectThreshold = parallelSelectThreshold;
+        this.jobRetentionMillis = TimeUnit.SECONDS.toMillis(jobRetentionSeconds);
+        this.crawlTimeoutMillis = TimeUnit.SECONDS.toMillis(crawlTimeoutSeconds);
+        this.jobs = new ConcurrentHashMap<>();
+        this.runningCrawls = new ConcurrentHashMap<>();
+        this.resultCache = CacheBuilder.newBuilder()
+                .maximumSize(resultCacheMaxEntries)
+                .expireAfterWrite(resultCacheTtlSeconds, TimeUnit.SECONDS)
+                .build();
         this.crawlerService = crawlerService;
         this.textParserService = textParserService;
         this.notifierService = notifierService;
-        this.executorService =
-                Executors.newFixedThreadPool(
+        this.clusterService = clusterService;
+        this.memoryGovernor = memoryGovernor;
+        this.metrics = metrics;
+        this.executorService = executionMode == ExecutionMode.VIRTUAL
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(
                         threadCount,
                         new ThreadFactoryBuilder()
                                 .setNameFormat(getClass().getSimpleName() + "-TaskExecutor-%d")
@@ -55,17 +118,186 @@ public class TopWordFrequencyService {
                                 .setDaemon(true)
                                 .build()
                 );
+        if (executionMode == ExecutionMode.POOLS) {
+            metrics.monitor(executorService, "top-word-frequency-service");
+        }
+        clusterService.register(new LocalNode());
     }
 
-    public Map<String, Long> getTopWordsFrequency(String urlString, int depth) {
+    public TopWords getTopWordsFrequency(String urlString, int depth, CountingOptions options, CrawlBudget budget,
+                                         boolean offline) {
+        urlString = crawlerService.canonicalize(urlString);
+        CrawlKey key = CrawlKey.of(urlString, depth, options, budget, offline);
+        TopWords cached = resultCache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        CompletableFuture<TopWords> crawl = new CompletableFuture<>();
+        CompletableFuture<TopWords> running = runningCrawls.putIfAbsent(key, crawl);
+        if (running != null) {
+            return awaitRunning(urlString, running);
+        }
+        try {
+            cached = resultCache.getIfPresent(key);
+            TopWords result = cached != null ? cached : crawlAndWait(urlString, depth, options, budget, offline);
+            crawl.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            crawl.completeExceptionally(e);
+            throw e;
+        } finally {
+            runningCrawls.remove(key, crawl);
+        }
+    }
+
+    public CrawlJob startCrawl(String urlString, int depth, CountingOptions options, CrawlBudget budget,
+                               boolean offline) {
+        if (offline && !crawlerService.canCrawlOffline()) {
+            throw new ValidationException("offline crawl requires the page store to be enabled");
+        }
+        if (clusterService.isEnabled() && options.mode == CountingMode.APPROXIMATE) {
+            throw new ValidationException("approximate counting is not supported in cluster mode");
+        }
+        if (clusterService.isEnabled() && budget.hasPageOrByteLimit()) {
+            throw new ValidationException("page and byte budgets are not supported in cluster mode");
+        }
+        urlString = crawlerService.canonicalize(urlString);
+        evictExpiredJobs();
         Root root = new Root(urlString, depth, ThreadLocalRandom.current().nextInt(RANDOM_MAX));
-        prepareForTasks(root, urlString, depth);
-        crawlerService.startCrawl(root, urlString);
-        notifierService.waitWorkFinish(root);
-        Map<String, LongAdder> wordFrequencyMap = crawlerService.getCrawlResult(root);
-        Map<String, Long> result = getTopWordsFrequency(wordFrequencyMap);
-        executorService.execute(() -> cleanForRoot(root));
-        return result;
+        memoryGovernor.admit(root);
+        CrawlJob job = new CrawlJob(UUID.randomUUID().toString(), root, options, budget, offline,
+                System.currentTimeMillis());
+        CompletableFuture<Void> completion;
+        try {
+            jobs.put(job.id, job);
+            prepareForTasks(root, Collections.singletonList(new CrawlSeed(urlString, depth)), options, budget,
+                    offline);
+            completion = notifierService.completion(root);
+            if (clusterService.isEnabled()) {
+                clusterService.startCrawl(root, options, offline);
+            }
+            crawlerService.startCrawl(root);
+        } catch (RuntimeException e) {
+            jobs.remove(job.id);
+            cleanForRoot(root);
+            throw e;
+        }
+        if (clusterService.isEnabled()) {
+            completion = clusterService.awaitTermination(root, completion);
+        }
+        completion.whenCompleteAsync((ignored, e) -> {
+            if (e == null) {
+                finish(job, false);
+            } else if (!(e instanceof CancellationException)) {
+                fail(job, e);
+            }
+        }, executorService);
+        if (budget.deadlineMillis > 0) {
+            CompletableFuture.delayedExecutor(budget.deadlineMillis, TimeUnit.MILLISECONDS, executorService)
+                    .execute(() -> finish(job, true));
+        }
+        return job;
+    }
+
+    /**
+     * Crawls all seeds through one frontier, so a page that several of them reach is fetched and parsed once,
+     * and returns the top words of each seed along with those of all their pages together.
+     */
+    public BatchTopWords getBatchTopWordsFrequency(List<CrawlSeed> seeds, CountingOptions options, boolean offline) {
+        if (seeds.isEmpty() || seeds.size() > MAX_BATCH_SEEDS) {
+            throw new ValidationException("a batch must have between 1 and " + MAX_BATCH_SEEDS + " roots");
+        }
+        if (offline && !crawlerService.canCrawlOffline()) {
+            throw new ValidationException("offline crawl requires the page store to be enabled");
+        }
+        if (clusterService.isEnabled()) {
+            throw new ValidationException("batch crawls are not supported in cluster mode");
+        }
+        if (options.mode == CountingMode.APPROXIMATE
+                && (seeds.size() + 1) * CountMinSketch.counters(options.epsilon, options.delta)
+                > MAX_BATCH_SKETCH_COUNTERS) {
+            throw new ValidationException("a batch of " + seeds.size() + " roots needs more than "
+                    + MAX_BATCH_SKETCH_COUNTERS + " sketch counters, raise epsilon or delta or split the batch");
+        }
+        List<CrawlSeed> canonicalSeeds = new ArrayList<>(seeds.size());
+        int maxDepth = 0;
+        for (CrawlSeed seed : seeds) {
+            canonicalSeeds.add(new CrawlSeed(crawlerService.canonicalize(seed.urlString), seed.depth));
+            maxDepth = Math.max(maxDepth, seed.depth);
+        }
+        Root root = new Root(canonicalSeeds.get(0).urlString, maxDepth,
+                ThreadLocalRandom.current().nextInt(RANDOM_MAX));
+        memoryGovernor.admit(root);
+        long startedAtMillis = System.currentTimeMillis();
+        CompletableFuture<Void> completion;
+        try {
+            prepareForTasks(root, canonicalSeeds, options, CrawlBudget.UNLIMITED, offline);
+            textParserService.prepareForSeeds(root, options, canonicalSeeds.size());
+            completion = notifierService.completion(root);
+            crawlerService.startCrawl(root);
+        } catch (RuntimeException e) {
+            cleanForRoot(root);
+            throw e;
+        }
+        CrawlStatus status = CrawlStatus.CANCELLED;
+        try {
+            completion.get(crawlTimeoutMillis, TimeUnit.MILLISECONDS);
+            status = CrawlStatus.FINISHED;
+        } catch (TimeoutException e) {
+            LOGGER.warn("Batch crawl of {} roots did not finish in {} ms, returning partial result",
+                    canonicalSeeds.size(), crawlTimeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Join was interrupted. Result not finished");
+        } catch (ExecutionException e) {
+            LOGGER.error(e.getMessage(), e);
+            status = CrawlStatus.FAILED;
+        }
+        try {
+            return getBatchTopWords(root, canonicalSeeds,
+                    status != CrawlStatus.FINISHED || crawlerService.isTruncated(root));
+        } finally {
+            metrics.crawlFinished(status, System.currentTimeMillis() - startedAtMillis);
+            executorService.execute(() -> cleanForRoot(root));
+        }
+    }
+
+    @Nullable
+    public CrawlJob getJob(String id) {
+        return jobs.get(id);
+    }
+
+    public CrawlProgress getProgress(CrawlJob job) {
+        CrawlProgress progress = job.progress();
+        return progress != null ? progress : currentProgress(job.root);
+    }
+
+    /**
+     * @return the estimated memory use of a running crawl, or {@code null} once it is over
+     */
+    @Nullable
+    public MemoryUsage getMemoryUsage(CrawlJob job) {
+        return job.status() == CrawlStatus.RUNNING ? memoryGovernor.getUsage(job.root) : null;
+    }
+
+    public TopWords getTopWords(CrawlJob job) {
+        TopWords result = job.result();
+        if (result != null) {
+            return result;
+        }
+        return getTopWords(job.root, isTruncated(job.root));
+    }
+
+    public boolean cancel(String id) {
+        CrawlJob job = jobs.remove(id);
+        if (job == null) {
+            return false;
+        }
+        if (job.finish(CrawlStatus.CANCELLED, null, currentProgress(job.root), System.currentTimeMillis())) {
+            crawlFinished(job);
+        }
+        cleanForRoot(job.root);
+        return true;
     }
 
     @PreDestroy
@@ -73,37 +305,237 @@ public class TopWordFrequencyService {
         executorService.shutdownNow();
     }
 
-    private void prepareForTasks(Root root, String urlSource, int depth) {
-        textParserService.prepareForRoot(root);
-        notifierService.prepareForRoot(root);
-        crawlerService.prepareForRoot(root, urlSource, depth);
-    }
-
-    private Map<String, Long> getTopWordsFrequency(Map<String, LongAdder> wordFrequencyMap) {
-        SortedMap<Long, List<String>> sortedMap = new TreeMap<>(Collections.reverseOrder());
-        for (Map.Entry<String, LongAdder> entry : wordFrequencyMap.entrySet()) {
-            sortedMap.computeIfAbsent(entry.getValue().longValue(), x -> new ArrayList<>()).add(entry.getKey());
-        }
-        int count = 0;
-        Map<String, Long> result = new LinkedHashMap<>(topCount);
-        for (Map.Entry<Long, List<String>> entry : sortedMap.entrySet()) {
-            for (String str : entry.getValue()) {
-                result.put(str, entry.getKey());
-                count++;
-                if (count >= topCount) {
-                    break;
-                }
+    /**
+     * Waits for the same crawl started by another request, and fails the way that request did.
+     */
+    private TopWords awaitRunning(String urlString, CompletableFuture<TopWords> running) {
+        try {
+            return running.get(crawlTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
-            if (count >= topCount) {
-                break;
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new CrawlRejectedException("Crawl of " + urlString + " is still running, retry in "
+                    + RUNNING_CRAWL_RETRY_AFTER_SECONDS + " seconds", RUNNING_CRAWL_RETRY_AFTER_SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for crawl of " + urlString);
+        }
+    }
+
+    private TopWords crawlAndWait(String urlString, int depth, CountingOptions options, CrawlBudget budget,
+                                  boolean offline) {
+        CrawlJob job = startCrawl(urlString, depth, options, budget, offline);
+        try {
+            job.completion().get(crawlTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.warn("Crawl of [{}] did not finish in {} ms, returning partial result", urlString,
+                    crawlTimeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Join was interrupted. Result not finished");
+        } catch (ExecutionException e) {
+            LOGGER.error(e.getMessage(), e);
+        }
+        jobs.remove(job.id);
+        TopWords result = job.result();
+        if (result == null) {
+            collectClusterResult(job.root);
+            result = getTopWords(job.root, true);
+            if (job.finish(CrawlStatus.CANCELLED, null, currentProgress(job.root), System.currentTimeMillis())) {
+                crawlFinished(job);
             }
+            executorService.execute(() -> cleanForRoot(job.root));
         }
         return result;
     }
 
+    /**
+     * Completes the job with the words counted so far, either when the crawl is over or at its deadline, which
+     * truncates it. Whichever comes second finds the job finished.
+     */
+    private void finish(CrawlJob job, boolean deadlineReached) {
+        synchronized (job) {
+            if (job.status() != CrawlStatus.RUNNING) {
+                return;
+            }
+            if (deadlineReached) {
+                LOGGER.info("Crawl of [{}] reached its deadline of {} ms", job.root.urlString,
+                        job.budget.deadlineMillis);
+            }
+            collectClusterResult(job.root);
+            TopWords result = getTopWords(job.root, deadlineReached || isTruncated(job.root));
+            if (!result.truncated) {
+                resultCache.put(CrawlKey.of(job.root.urlString, job.root.depth, job.options, job.budget,
+                        job.offline), result);
+            }
+            if (!job.finish(CrawlStatus.FINISHED, result, currentProgress(job.root), System.currentTimeMillis())) {
+                return;
+            }
+        }
+        crawlFinished(job);
+        cleanForRoot(job.root);
+    }
+
+    private void fail(CrawlJob job, Throwable e) {
+        LOGGER.error("Crawl of [{}] failed", job.root.urlString, e);
+        if (job.finish(CrawlStatus.FAILED, null, currentProgress(job.root), System.currentTimeMillis())) {
+            crawlFinished(job);
+            cleanForRoot(job.root);
+        }
+    }
+
+    private void crawlFinished(CrawlJob job) {
+        metrics.crawlFinished(job.status(), job.finishedAtMillis() - job.startedAtMillis);
+    }
+
+    private void evictExpiredJobs() {
+        long expiredBefore = System.currentTimeMillis() - jobRetentionMillis;
+        for (CrawlJob job : jobs.values()) {
+            if (job.status() != CrawlStatus.RUNNING && job.finishedAtMillis() < expiredBefore) {
+                jobs.remove(job.id);
+            }
+        }
+    }
+
+    private CrawlProgress currentProgress(Root root) {
+        CrawlProgress local = localProgress(root);
+        if (!clusterService.isEnabled()) {
+            return local;
+        }
+        CrawlProgress remote = clusterService.getRemoteProgress(root);
+        return new CrawlProgress(
+                local.pagesFetched + remote.pagesFetched,
+                local.pagesFailed + remote.pagesFailed,
+                local.pagesPending + remote.pagesPending,
+                local.pagesFetching + remote.pagesFetching,
+                local.pagesParsing + remote.pagesParsing,
+                local.pagesCounting + remote.pagesCounting,
+                local.linksDropped + remote.linksDropped,
+                local.wordsCounted + remote.wordsCounted,
+                local.distinctWords + remote.distinctWords
+        );
+    }
+
+    private CrawlProgress localProgress(Root root) {
+        CrawlStatistics statistics = crawlerService.getStatistics(root);
+        WordCounter wordCounter = crawlerService.getCrawlResult(root);
+        if (statistics == null || wordCounter == null) {
+            return CrawlProgress.EMPTY;
+        }
+        return new CrawlProgress(
+                statistics.pagesFetched(),
+                statistics.pagesFailed(),
+                notifierService.getPending(root),
+                notifierService.getInStage(root, CrawlTracker.Stage.FETCHING),
+                notifierService.getInStage(root, CrawlTracker.Stage.PARSING),
+                notifierService.getInStage(root, CrawlTracker.Stage.COUNTING),
+                statistics.linksDropped(),
+                wordCounter.totalWords(),
+                wordCounter.size()
+        );
+    }
+
+    private void prepareForTasks(Root root, List<CrawlSeed> seeds, CountingOptions options, CrawlBudget budget,
+                                 boolean offline) {
+        textParserService.prepareForRoot(root, options);
+        notifierService.prepareForRoot(root);
+        crawlerService.prepareForRoot(root, seeds, budget, offline);
+    }
+
+    private BatchTopWords getBatchTopWords(Root root, List<CrawlSeed> seeds, boolean truncated) {
+        WordCounter[] seedResults = textParserService.getSeedResults(root);
+        List<TopWords> seedTopWords = new ArrayList<>(seeds.size());
+        for (int i = 0; i < seeds.size(); i++) {
+            seedTopWords.add(getTopWords(seedResults == null ? null : seedResults[i], truncated));
+        }
+        return new BatchTopWords(seeds, seedTopWords, getTopWords(root, truncated));
+    }
+
+    private TopWords getTopWords(Root root, boolean truncated) {
+        return getTopWords(crawlerService.getCrawlResult(root), truncated);
+    }
+
+    private TopWords getTopWords(@Nullable WordCounter wordCounter, boolean truncated) {
+        if (wordCounter == null) {
+            return new TopWords(Collections.emptyMap(), 0, null, truncated);
+        }
+        return new TopWords(getTopWordsFrequency(wordCounter), wordCounter.totalWords(), wordCounter.errorBounds(),
+                truncated);
+    }
+
+    private Map<String, Long> getTopWordsFrequency(WordCounter wordCounter) {
+        TopKSelector selector = wordCounter.size() >= parallelSelectThreshold
+                ? TopKSelector.select(wordCounter, topCount, ForkJoinPool.commonPool())
+                : TopKSelector.select(wordCounter, topCount);
+        return selector.toMap();
+    }
+
+    /**
+     * Merges the word counts of the other cluster nodes into the local ones, once the crawl is over or given
+     * up on.
+     */
+    private void collectClusterResult(Root root) {
+        WordCounter wordCounter = crawlerService.getCrawlResult(root);
+        if (!clusterService.isEnabled() || wordCounter == null) {
+            return;
+        }
+        try {
+            clusterService.collect(root, wordCounter);
+        } catch (RuntimeException e) {
+            LOGGER.error("Cannot collect word counts of [{}] from the cluster, result is partial", root.urlString,
+                    e);
+        }
+    }
+
+    private boolean isTruncated(Root root) {
+        return crawlerService.isTruncated(root) || clusterService.isTruncated(root);
+    }
+
     private void cleanForRoot(Root root) {
+        clusterService.cleanForRoot(root);
         crawlerService.cleanForRoot(root);
         notifierService.cleanForRoot(root);
         textParserService.cleanForRoot(root);
     }
+
+    /**
+     * Runs the part of a crawl that another cluster node coordinates.
+     */
+    private class LocalNode implements ClusterHandler {
+
+        @Override
+        public void prepare(Root root, CountingOptions options, boolean offline) {
+            prepareForTasks(root, Collections.singletonList(new CrawlSeed(root.urlString, root.depth)), options,
+                    CrawlBudget.UNLIMITED, offline);
+        }
+
+        @Override
+        public void accept(Root root, String url, int depth) {
+            crawlerService.acceptLink(root, url, depth);
+        }
+
+        @Override
+        public CrawlProgress progress(Root root) {
+            return localProgress(root);
+        }
+
+        @Override
+        public boolean isTruncated(Root root) {
+            return crawlerService.isTruncated(root);
+        }
+
+        @Nullable
+        @Override
+        public WordCounter result(Root root) {
+            return crawlerService.getCrawlResult(root);
+        }
+
+        @Override
+        public void clean(Root root) {
+            cleanForRoot(root);
+        }
+    }
 }